@@ -0,0 +1,66 @@
+package org.meganekkovr
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Bounded worker pool which rasterizes [SurfaceRendererComponent.CanvasRenderer]s off GL thread.
+ * Number of rasterizations in flight is limited by [maxInFlight]. Renderers which can't be
+ * submitted stay dirty and are retried in next frame.
+ */
+internal object CanvasRasterizer {
+
+    private const val DEFAULT_MAX_IN_FLIGHT = 2
+
+    private val inFlight = AtomicInteger()
+
+    private var executor: ExecutorService? = null
+
+    /**
+     * Maximum number of rasterizations in flight.
+     */
+    @Volatile
+    var maxInFlight = DEFAULT_MAX_IN_FLIGHT
+        set(maxInFlight) {
+            require(maxInFlight > 0) { "maxInFlight must be positive." }
+            field = maxInFlight
+        }
+
+    /**
+     * Number of rasterizations currently in flight.
+     */
+    val inFlightCount: Int
+        get() = inFlight.get()
+
+    /**
+     * Called from GL thread. Submit rasterization task if [maxInFlight] is not reached.
+     *
+     * @param task Rasterization task.
+     * @return `true` if task was submitted.
+     */
+    fun trySubmit(task: Runnable): Boolean {
+
+        // Only GL thread increments, so count never exceeds maxInFlight.
+        if (inFlight.get() >= maxInFlight) return false
+        inFlight.incrementAndGet()
+
+        val executor = executor ?: newExecutor().also { executor = it }
+        executor.execute {
+            try {
+                task.run()
+            } finally {
+                inFlight.decrementAndGet()
+            }
+        }
+        return true
+    }
+
+    // Leave one core for GL thread
+    private fun newExecutor(): ExecutorService {
+        val threads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1)
+        return Executors.newFixedThreadPool(threads) { runnable ->
+            Thread(runnable, "CanvasRasterizer").apply { isDaemon = true }
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package org.meganekkovr
 
 import android.content.Context
+import java.io.Closeable
 
 /**
  * Component is a basic class in Meganekko. It attaches some actions or behaviors to [Entity].
  */
-abstract class Component {
+abstract class Component : Closeable {
 
     /**
      * Get attached [Entity].
@@ -30,15 +31,69 @@ abstract class Component {
     val app: MeganekkoApp
         get() = entity.app
 
+    /**
+     * Index in [ComponentPool]. `-1` if this is not pooled.
+     * Pooled components are updated by [ComponentSystem] instead of [TickList].
+     */
+    internal var poolIndex = -1
+
+    /**
+     * Index in [TickList]. `-1` if this is not updated every frame.
+     */
+    internal var tickIndex = -1
+
+    internal var isAttached = false
+        private set
+
+    /**
+     * Enable or disable this. [update] is not called while disabled.
+     * Default value is `true`.
+     */
+    var isEnabled = true
+        set(isEnabled) {
+            field = isEnabled
+            updateTicking()
+        }
+
+    /**
+     * Sleep or wake up this. [update] is not called while sleeping.
+     * Components which have nothing to do for a while can sleep to save frame time.
+     * Default value is `false`.
+     */
+    var isSleeping = false
+        set(isSleeping) {
+            field = isSleeping
+            updateTicking()
+        }
+
+    /**
+     * `true` if [update] should be called.
+     */
+    internal val isActive: Boolean
+        get() = isAttached && isEnabled && !isSleeping
+
     internal fun attachTo(entity: Entity) {
         this.entity = entity
+        isAttached = true
         onAttach(entity)
     }
 
     internal fun detachFrom(entity: Entity) {
+        isAttached = false
         onDetach(entity)
     }
 
+    private fun updateTicking() {
+        if (!isAttached) return
+
+        val tickList = entity.findScene()?.tickList ?: return
+        if (isActive) {
+            tickList.add(this)
+        } else {
+            tickList.remove(this)
+        }
+    }
+
     /**
      * Called when this is attached to [Entity].
      *
@@ -55,11 +110,30 @@ abstract class Component {
 
     /**
      * Called on every frame update. About 60 times per second.
+     * Not called if this is disabled or sleeping.
+     * Components which do not override this are never scheduled.
+     * Components are updated after all [Entity.update] calls, in unspecified order.
      *
      * @param frame Frame information.
      */
     open fun update(frame: FrameInput) {}
 
+    /**
+     * Release native resources of this immediately instead of waiting for garbage collection.
+     * This is removed from [Entity]. Do not use this after disposed. Must be called in GL thread.
+     * Subclasses which have native resources must override this and call `super.dispose()`.
+     */
+    open fun dispose() {
+        if (isAttached) {
+            entity.remove(this)
+        }
+    }
+
+    /**
+     * Same as [dispose].
+     */
+    override fun close() = dispose()
+
     /**
      * Remove this from [Entity].
      * Use this if you want to remove myself from [.update].
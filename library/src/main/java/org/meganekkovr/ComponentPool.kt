@@ -0,0 +1,72 @@
+package org.meganekkovr
+
+/**
+ * Densely packed [Component]s of one type in a [Scene].
+ * Used by [ComponentSystem] to iterate all instances in one loop.
+ * Order of components is not stable. Removing a component moves the last one into its place.
+ */
+class ComponentPool<T : Component> internal constructor(val type: Class<T>) {
+
+    private var components = arrayOfNulls<Component>(INITIAL_CAPACITY)
+
+    /**
+     * Number of components in this pool.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Get component at index.
+     *
+     * @param index Index in `0 until size`.
+     * @return Component
+     */
+    operator fun get(index: Int): T {
+        if (index >= size) throw IndexOutOfBoundsException("index: $index, size: $size")
+        @Suppress("UNCHECKED_CAST")
+        return components[index] as T
+    }
+
+    /**
+     * Performs action on each component without allocation.
+     */
+    inline fun forEach(action: (T) -> Unit) {
+        for (i in 0 until size) {
+            action(get(i))
+        }
+    }
+
+    internal fun add(component: Component) {
+        if (component.poolIndex >= 0) return
+
+        if (size == components.size) {
+            components = components.copyOf(size * 2)
+        }
+        component.poolIndex = size
+        components[size++] = component
+    }
+
+    internal fun remove(component: Component) {
+        val index = component.poolIndex
+        if (index < 0 || components[index] !== component) return
+
+        // Swap with last one
+        val last = components[--size]!!
+        components[index] = last
+        last.poolIndex = index
+        components[size] = null
+        component.poolIndex = -1
+    }
+
+    internal fun clear() {
+        for (i in 0 until size) {
+            components[i]?.poolIndex = -1
+            components[i] = null
+        }
+        size = 0
+    }
+
+    companion object {
+        private const val INITIAL_CAPACITY = 16
+    }
+}
@@ -0,0 +1,72 @@
+package org.meganekkovr
+
+/**
+ * Holds [ComponentSystem]s of a [Scene] and [ComponentPool]s of their types.
+ * Kept up to date by [Entity.add] and [Entity.remove] like [EntityIndex].
+ */
+internal class ComponentRegistry(private val scene: Scene) {
+
+    private val systems = ArrayList<ComponentSystem<*>>()
+    private val pools = HashMap<Class<out Component>, ComponentPool<*>>()
+
+    fun add(system: ComponentSystem<*>): Boolean {
+        if (pools.containsKey(system.type)) return false
+
+        val pool = ComponentPool(system.type)
+        pools[system.type] = pool
+        systems.add(system)
+
+        // Collect existing components
+        collect(scene, pool)
+        return true
+    }
+
+    fun remove(system: ComponentSystem<*>): Boolean {
+        if (!systems.remove(system)) return false
+        pools.remove(system.type)?.clear()
+        return true
+    }
+
+    /**
+     * Register components of [entity] and all its descendants.
+     */
+    fun addSubtree(entity: Entity) {
+        if (pools.isEmpty()) return
+        entity.forEachComponent { add(it) }
+        entity.children.forEach { child -> addSubtree(child) }
+    }
+
+    /**
+     * Unregister components of [entity] and all its descendants.
+     */
+    fun removeSubtree(entity: Entity) {
+        if (pools.isEmpty()) return
+        entity.forEachComponent { remove(it) }
+        entity.children.forEach { child -> removeSubtree(child) }
+    }
+
+    fun add(component: Component) {
+        pools[component.javaClass]?.add(component)
+    }
+
+    fun remove(component: Component) {
+        pools[component.javaClass]?.remove(component)
+    }
+
+    fun update(frame: FrameInput) {
+        for (i in 0 until systems.size) {
+            update(frame, systems[i])
+        }
+    }
+
+    private fun <T : Component> update(frame: FrameInput, system: ComponentSystem<T>) {
+        @Suppress("UNCHECKED_CAST")
+        val pool = pools[system.type] as ComponentPool<T>
+        system.update(frame, pool)
+    }
+
+    private fun collect(entity: Entity, pool: ComponentPool<*>) {
+        entity.getComponent(pool.type)?.let { pool.add(it) }
+        entity.children.forEach { child -> collect(child, pool) }
+    }
+}
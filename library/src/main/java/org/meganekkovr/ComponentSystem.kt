@@ -0,0 +1,28 @@
+package org.meganekkovr
+
+/**
+ * System updates all [Component]s of one type in a [Scene] at once.
+ * Once a system is added with [Scene.add], components of [type] in the Scene are
+ * packed into [ComponentPool] and their [Component.update] is no longer called from the
+ * Scene's tick list. Subclasses process them in a loop in [update], which is called after
+ * all Entities and other Components are updated.
+ *
+ * Note that only components whose class is exactly [type] are handled. Subclasses of [type] are not.
+ *
+ * @param type Component class handled by this system.
+ */
+abstract class ComponentSystem<T : Component>(val type: Class<T>) {
+
+    /**
+     * Called on every frame update after the scene graph is updated.
+     * Default implementation calls [Component.update] of every enabled and awake component.
+     *
+     * @param frame      Frame information.
+     * @param components All components of [type] in the Scene.
+     */
+    open fun update(frame: FrameInput, components: ComponentPool<T>) {
+        components.forEach {
+            if (it.isActive) it.update(frame)
+        }
+    }
+}
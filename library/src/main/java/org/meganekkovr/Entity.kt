@@ -1,11 +1,13 @@
 package org.meganekkovr
 
+import android.graphics.Bitmap
 import android.graphics.drawable.Drawable
 import android.view.View
 import org.joml.Matrix4f
 import org.joml.Quaternionf
 import org.joml.Vector3f
 import org.meganekkovr.animation.EntityAnimator
+import java.io.Closeable
 
 /**
  * Entity is a basic class in Meganekko. It is something on VR scene.
@@ -14,7 +16,7 @@ import org.meganekkovr.animation.EntityAnimator
  * It can have child Entities and [Component]s.
  * Entity which will be rendered has to have [GeometryComponent] and [SurfaceRendererComponent].
  */
-open class Entity {
+open class Entity : Closeable {
     private val _nativePointer = NativePointer.getInstance(newInstance())
 
     /**
@@ -29,6 +31,9 @@ open class Entity {
 
     private val components = mutableMapOf<Class<out Component>, Component>()
 
+    // Same as components.values. For iteration without allocation.
+    private val componentList = ArrayList<Component>()
+
     /**
      * Get children of Entity.
      *
@@ -36,43 +41,91 @@ open class Entity {
      */
     val children = mutableListOf<Entity>()
 
+    /**
+     * Slot of this Entity's transform in [TransformStore].
+     */
+    internal val transformSlot = TransformStore.allocate(this)
+
     /**
      * Get/Set Entity's local position.
+     * Returned value is a new copy of current position. It does not follow later changes
+     * and modifying it does not affect to Entity. Use setter instead.
+     * Previously this returned internal vector which always had current value.
      */
-    var position = Vector3f()
+    var position: Vector3f
+        get() {
+            val i = transformSlot * TransformStore.POSITION_STRIDE
+            synchronized(TransformStore) {
+                val positions = TransformStore.positions
+                return Vector3f(positions[i], positions[i + 1], positions[i + 2])
+            }
+        }
         set(position) {
-            field.set(position)
-            localMatrixUpdateRequired = true
+            TransformStore.setPosition(transformSlot, position.x, position.y, position.z)
+            invalidateLocalMatrix()
         }
 
     /**
      * Get/Set Entity's local scale.
+     * Returned value is a new copy of current scale. It does not follow later changes
+     * and modifying it does not affect to Entity. Use setter instead.
+     * Previously this returned internal vector which always had current value.
      */
-    var scale = Vector3f(1f, 1f, 1f)
+    var scale: Vector3f
+        get() {
+            val i = transformSlot * TransformStore.SCALE_STRIDE
+            synchronized(TransformStore) {
+                val scales = TransformStore.scales
+                return Vector3f(scales[i], scales[i + 1], scales[i + 2])
+            }
+        }
         set(scale) {
-            field.set(scale)
-            localMatrixUpdateRequired = true
+            TransformStore.setScale(transformSlot, scale.x, scale.y, scale.z)
+            invalidateLocalMatrix()
         }
 
     /**
      * Get/Set Entity's local rotation.
+     * Returned value is a new copy of current rotation. It does not follow later changes
+     * and modifying it does not affect to Entity. Use setter instead.
+     * Previously this returned internal quaternion which always had current value.
      */
-    var rotation = Quaternionf()
+    var rotation: Quaternionf
+        get() {
+            val i = transformSlot * TransformStore.ROTATION_STRIDE
+            synchronized(TransformStore) {
+                val rotations = TransformStore.rotations
+                return Quaternionf(rotations[i], rotations[i + 1], rotations[i + 2], rotations[i + 3])
+            }
+        }
         set(rotation) {
-            field.set(rotation)
-            localMatrixUpdateRequired = true
+            TransformStore.setRotation(transformSlot, rotation.x, rotation.y, rotation.z, rotation.w)
+            invalidateLocalMatrix()
         }
 
-    private val localMatrix = Matrix4f()
-
     /**
      * Get world model matrix.
+     * Returned value is a new copy of matrix computed in last frame. It does not follow later changes.
+     * Previously this returned internal matrix which was updated every frame.
      *
      * @return World model matrix.
      */
-    val worldModelMatrix = Matrix4f()
+    val worldModelMatrix: Matrix4f
+        get() = getWorldModelMatrix(Matrix4f())
 
-    private val matrixValues = FloatArray(16)
+    /**
+     * Copy world model matrix computed in last frame into [dest] without allocation.
+     * Matrices are computed on GL thread without lock, so call this from GL thread
+     * to get consistent value.
+     *
+     * @param dest Destination.
+     * @return [dest]
+     */
+    fun getWorldModelMatrix(dest: Matrix4f): Matrix4f {
+        synchronized(TransformStore) {
+            return dest.set(TransformStore.worldMatrices, transformSlot * TransformStore.MATRIX_STRIDE)
+        }
+    }
 
     lateinit var app: MeganekkoApp
 
@@ -82,10 +135,48 @@ open class Entity {
     var parent: Entity? = null
         private set
 
-    private var localMatrixUpdateRequired = true
-    private var worldMatrixUpdateRequired = true
+    @Volatile
+    private var localMatrixUpdateRequired = false
+
+    /**
+     * `true` while this is queued in [TransformScheduler].
+     */
+    @Volatile
+    internal var transformQueued = false
+        private set
+
+    /**
+     * `true` if [dispose] has been called.
+     */
+    var isDisposed = false
+        private set
+
+    /**
+     * Depth in scene graph. Root is 0.
+     */
+    internal var depth = 0
+        private set
+
+    /**
+     * Number of Entities in subtree including this.
+     */
+    internal var subtreeSize = 1
+        private set
+
+    /**
+     * Get/Set id. Typically, id is `R.id.xxx` value.
+     */
+    var id: Int
+        get() = idValue
+        set(id) = updateId(id, null)
+
+    private var idValue = 0
 
-    var id: Int = 0
+    /**
+     * Original string of id set with [setId].
+     */
+    internal var stringId: String? = null
+        private set
 
     /**
      * Get/Set opacity. Actual opacity used in rendering can get with [.getRenderingOpacity].
@@ -104,11 +195,22 @@ open class Entity {
             // Do nothing if previous value is same to new value
             if (this.opacity != actualOpacity) {
                 field = actualOpacity
-                updateOpacityRequired = true
+                if (!isOpacityChanged) {
+                    isOpacityChanged = true
+                    findScene()?.tickList?.requestOpacityUpdate(this)
+                }
             }
         }
 
-    private var updateOpacityRequired: Boolean = false
+    // Cleared when drained from TickList, so change from other thread is never lost
+    @Volatile
+    internal var isOpacityChanged: Boolean = false
+        private set
+
+    /**
+     * `true` if this is in [TickList].
+     */
+    internal var isTicking = false
 
     /**
      * Get/Set visibility of this [Entity]. Note that this will return **its own visibility**.
@@ -116,9 +218,34 @@ open class Entity {
      * Default value is `true`.
      */
     var isVisible = true
+        set(isVisible) {
+            if (field != isVisible) {
+                field = isVisible
+                RenderList.invalidate()
+            }
+        }
 
+    // true if this has Geometry and Surface.
     var isRenderable: Boolean = false
-        private set // true if this has Geometry and Surface.
+        private set(isRenderable) {
+            if (field != isRenderable) {
+                field = isRenderable
+                RenderList.invalidate()
+            }
+        }
+
+    /**
+     * Render queue of this entity. Surfaces are drawn in order of [RenderQueue].
+     * Set `null` to decide it from its surface (e.g. opacity, opaque flag and chroma key).
+     * Default value is `null`.
+     */
+    var renderQueue: RenderQueue? = null
+        set(renderQueue) {
+            if (field != renderQueue) {
+                field = renderQueue
+                setRenderQueue(nativePointer, renderQueue?.ordinal ?: -1)
+            }
+        }
 
     /**
      * Get actual opacity used in rendering.
@@ -149,6 +276,47 @@ open class Entity {
      */
     private external fun newInstance(): Long
 
+    private external fun setRenderQueue(nativePtr: Long, renderQueue: Int)
+
+    /**
+     * Release native resources of this, its components and all descendants immediately
+     * instead of waiting for garbage collection. This is removed from its parent.
+     * Do not use this after disposed. Must be called in GL thread.
+     */
+    open fun dispose() {
+        if (isDisposed) return
+        isDisposed = true
+
+        remove()
+
+        while (children.isNotEmpty()) {
+            val child = children[children.size - 1]
+            child.dispose()
+
+            // In case subclass does not call super.dispose()
+            remove(child)
+        }
+
+        while (componentList.isNotEmpty()) {
+            val component = componentList[componentList.size - 1]
+            component.dispose()
+
+            // In case subclass does not call super.dispose()
+            remove(component)
+        }
+
+        // Scheduler skips this
+        transformQueued = false
+        TransformStore.release(transformSlot)
+
+        _nativePointer.release()
+    }
+
+    /**
+     * Same as [dispose].
+     */
+    override fun close() = dispose()
+
     /**
      * Called at very first time at initialization process.
      */
@@ -165,11 +333,21 @@ open class Entity {
      * @param id ID
      */
     fun setId(id: String) {
-        this.id = id.hashCode()
+        updateId(id.hashCode(), id)
+    }
+
+    private fun updateId(id: Int, stringId: String?) {
+        if (idValue == id && this.stringId == stringId) return
+
+        val index = findIndex()
+        index?.remove(this)
+        idValue = id
+        this.stringId = stringId
+        index?.add(this)
     }
 
     /**
-     * Find [Entity] from children. Typically, id is `R.id.xxx` value.
+     * Find [Entity] from this and its descendants. Typically, id is `R.id.xxx` value.
      *
      * @param id ID
      * @return Found Entity or `null` if it has no matched Entity with id.
@@ -178,6 +356,10 @@ open class Entity {
 
         if (this.id == id) return this
 
+        // O(1) lookup if this is in Scene
+        val index = findIndex()
+        if (index != null) return index.find(id, this)
+
         children.forEach { child ->
             val found = child.findById(id)
             if (found != null) return found
@@ -187,79 +369,73 @@ open class Entity {
     }
 
     /**
-     * Find [Entity] from children.
+     * Find [Entity] from this and its descendants.
      *
      * @param id ID
      * @return Found Entity or `null` if it has no matched Entity with id.
      */
     fun findById(id: String): Entity? {
-        return findById(id.hashCode())
-    }
 
-    /**
-     * Called at every frame update.
-     *
-     * @param frame Frame information
-     */
-    open fun update(frame: FrameInput) {
+        if (stringId == id) return this
 
-        // Notify to components
-        components.values.forEach { it.update(frame) }
+        // O(1) lookup if this is in Scene
+        val index = findIndex()
+        if (index != null) return index.find(id, this)
 
-        // Notify to children
-        children.forEach { it.update(frame) }
+        return findByStringId(id) ?: findById(id.hashCode())
+    }
 
-        // Update local model matrix if necessary.
-        if (localMatrixUpdateRequired) {
-            updateLocalMatrix()
-            invalidateWorldModelMatrix()
-            localMatrixUpdateRequired = false
-        }
+    private fun findByStringId(id: String): Entity? {
 
-        // Update world model matrix if necessary.
-        if (worldMatrixUpdateRequired) {
-            updateWorldModelMatrix()
-            worldMatrixUpdateRequired = false
+        if (stringId == id) return this
 
-            // Update native side values
-            worldModelMatrix.get(matrixValues)
-            setWorldModelMatrix(nativePointer, matrixValues)
+        children.forEach { child ->
+            val found = child.findByStringId(id)
+            if (found != null) return found
         }
 
-        // Update opacity if necessary.
-        if (updateOpacityRequired) {
-            updateOpacity()
-            updateOpacityRequired = false
-        }
+        return null
     }
 
     /**
-     * Update local matrix.
+     * @return Id index of [Scene] which this belongs to. `null` if this is not in Scene.
      */
-    private fun updateLocalMatrix() {
-        localMatrix.identity()
-        localMatrix.translate(this.position)
-        localMatrix.rotate(this.rotation)
-        localMatrix.scale(this.scale)
-    }
+    private fun findIndex(): EntityIndex? = findScene()?.index
 
     /**
-     * Update world model matrix.
+     * @return [Scene] which this belongs to. `null` if this is not in Scene.
      */
-    private fun updateWorldModelMatrix() {
-
-        // parentMatrix * worldModelMatrix
-        val parent = parent
-        if (parent != null) {
-            val parentMatrix = parent.worldModelMatrix
-            parentMatrix.mul(localMatrix, worldModelMatrix)
-        } else {
+    internal fun findScene(): Scene? {
+        var entity = this
+        while (true) {
+            entity = entity.parent ?: break
+        }
+        return entity as? Scene
+    }
 
-            // worldModelMatrix = localMatrix
-            worldModelMatrix.set(localMatrix)
+    /**
+     * @return `true` if this is [ancestor] or its descendant.
+     */
+    internal fun isDescendantOf(ancestor: Entity): Boolean {
+        var entity: Entity? = this
+        while (entity != null) {
+            if (entity === ancestor) return true
+            entity = entity.parent
         }
+        return false
     }
 
+    /**
+     * Called at every frame update while this is in [Scene].
+     * Entities which do not override this are never scheduled.
+     * Components and children are updated by [Scene], so it is not needed to call this of children.
+     * Entities are updated in depth order, so parent is updated before its children.
+     * All Entities are updated before any [Component.update].
+     *
+     * @param frame Frame information
+     */
+    open fun update(frame: FrameInput) {}
+
     /**
      * Add [Component]. Note that only one Component can be added per class.
      *
@@ -271,6 +447,13 @@ open class Entity {
         if (!components.containsKey(componentClass)) {
             component.attachTo(this)
             components[componentClass] = component
+            componentList.add(component)
+
+            val scene = findScene()
+            if (scene != null) {
+                scene.componentRegistry.add(component)
+                scene.tickList.add(component)
+            }
 
             if (component.javaClass == GeometryComponent::class.java || component.javaClass == SurfaceRendererComponent::class.java) {
                 this.isRenderable = hasComponent<GeometryComponent>() && hasComponent<SurfaceRendererComponent>()
@@ -299,7 +482,17 @@ open class Entity {
     fun <T : Component> remove(clazz: Class<T>): Boolean {
         if (components.containsKey(clazz)) {
             val component = components.remove(clazz)
-            component?.detachFrom(this)
+            if (component != null) {
+                componentList.remove(component)
+
+                val scene = findScene()
+                if (scene != null) {
+                    scene.componentRegistry.remove(component)
+                    scene.tickList.remove(component)
+                }
+
+                component.detachFrom(this)
+            }
 
             if (clazz == SurfaceRendererComponent::class.java || clazz == GeometryComponent::class.java) {
                 this.isRenderable = hasComponent<GeometryComponent>() && hasComponent<SurfaceRendererComponent>()
@@ -327,6 +520,12 @@ open class Entity {
         return components.containsKey(clazz)
     }
 
+    internal inline fun forEachComponent(action: (Component) -> Unit) {
+        for (i in 0 until componentList.size) {
+            action(componentList[i])
+        }
+    }
+
     /**
      * Add child [Entity].
      *
@@ -337,6 +536,16 @@ open class Entity {
         val added = children.add(child)
         if (added) {
             child.parent = this
+            val scene = findScene()
+            if (scene != null) {
+                scene.index.addSubtree(child)
+                scene.componentRegistry.addSubtree(child)
+                scene.tickList.addSubtree(child)
+            }
+            child.updateDepth(depth + 1)
+            updateSubtreeSize(child.subtreeSize)
+            child.invalidateWorldModelMatrix()
+            RenderList.invalidate()
 
             if (this::app.isInitialized) {
                 child.lateInitialize(app)
@@ -354,7 +563,17 @@ open class Entity {
     fun remove(child: Entity): Boolean {
         val removed = children.remove(child)
         if (removed) {
+            val scene = findScene()
+            if (scene != null) {
+                scene.index.removeSubtree(child)
+                scene.componentRegistry.removeSubtree(child)
+                scene.tickList.removeSubtree(child)
+            }
             child.parent = null
+            child.updateDepth(0)
+            updateSubtreeSize(-child.subtreeSize)
+            child.invalidateWorldModelMatrix()
+            RenderList.invalidate()
         }
         return removed
     }
@@ -369,12 +588,86 @@ open class Entity {
         return parent?.remove(this) ?: false
     }
 
+    private fun invalidateLocalMatrix() {
+        localMatrixUpdateRequired = true
+        invalidateWorldModelMatrix()
+    }
+
     private fun invalidateWorldModelMatrix() {
 
-        worldMatrixUpdateRequired = true
+        // Children are updated with this when scheduler resolves this.
+        if (!transformQueued) {
+            transformQueued = true
+            TransformScheduler.enqueue(this)
+        }
+    }
+
+    /**
+     * Called from [TransformScheduler.flush] while it holds lock of [TransformStore].
+     * Update local matrix if position, rotation or scale has changed.
+     */
+    internal fun updateLocalMatrix() {
+        if (localMatrixUpdateRequired) {
+            localMatrixUpdateRequired = false
+            TransformStore.updateLocalMatrix(transformSlot)
+        }
+    }
+
+    /**
+     * Update world model matrix of this Entity only.
+     * Parent's world model matrix must be up to date.
+     */
+    internal fun updateTransform() {
+
+        // Clear before reading local flag not to lose changes from other threads.
+        transformQueued = false
 
-        // Propagate to children
-        children.forEach(Entity::invalidateWorldModelMatrix)
+        // Changed after local matrices of this frame were computed. Resolve again in next frame.
+        if (localMatrixUpdateRequired) {
+            invalidateWorldModelMatrix()
+        }
+
+        TransformStore.updateWorldMatrix(transformSlot, parent?.transformSlot ?: -1)
+    }
+
+    /**
+     * Called from [TransformScheduler.flush].
+     * Update transform of this and all descendants and queue them for native upload.
+     */
+    internal fun resolveTransform() {
+        updateTransform()
+
+        // Update native side values at the end of frame
+        WorldMatrixUploader.add(nativePointer, transformSlot)
+
+        for (i in 0 until children.size) {
+            children[i].resolveTransform()
+        }
+    }
+
+    /**
+     * Queue world model matrices of this and all descendants for native upload.
+     * Used after transforms are computed in parallel.
+     */
+    internal fun uploadTransform() {
+        WorldMatrixUploader.add(nativePointer, transformSlot)
+
+        for (i in 0 until children.size) {
+            children[i].uploadTransform()
+        }
+    }
+
+    private fun updateSubtreeSize(delta: Int) {
+        var entity: Entity? = this
+        while (entity != null) {
+            entity.subtreeSize += delta
+            entity = entity.parent
+        }
+    }
+
+    private fun updateDepth(depth: Int) {
+        this.depth = depth
+        children.forEach { child -> child.updateDepth(depth + 1) }
     }
 
     /**
@@ -385,8 +678,8 @@ open class Entity {
      * @param z Z component of position
      */
     fun setPosition(x: Float, y: Float, z: Float) {
-        this.position.set(x, y, z)
-        localMatrixUpdateRequired = true
+        TransformStore.setPosition(transformSlot, x, y, z)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -395,8 +688,8 @@ open class Entity {
      * @param x X component of position
      */
     fun setX(x: Float) {
-        this.position.x = x
-        localMatrixUpdateRequired = true
+        TransformStore.setPosition(transformSlot, 0, x)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -405,8 +698,8 @@ open class Entity {
      * @param y Y component of position
      */
     fun setY(y: Float) {
-        this.position.y = y
-        localMatrixUpdateRequired = true
+        TransformStore.setPosition(transformSlot, 1, y)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -415,8 +708,8 @@ open class Entity {
      * @param z Z component of position
      */
     fun setZ(z: Float) {
-        this.position.z = z
-        localMatrixUpdateRequired = true
+        TransformStore.setPosition(transformSlot, 2, z)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -427,8 +720,8 @@ open class Entity {
      * @param z Z component of scale
      */
     fun setScale(x: Float, y: Float, z: Float) {
-        this.scale.set(x, y, z)
-        localMatrixUpdateRequired = true
+        TransformStore.setScale(transformSlot, x, y, z)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -437,8 +730,8 @@ open class Entity {
      * @param x X component of scale
      */
     fun setScaleX(x: Float) {
-        this.scale.x = x
-        localMatrixUpdateRequired = true
+        TransformStore.setScale(transformSlot, 0, x)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -447,8 +740,8 @@ open class Entity {
      * @param y Y component of scale
      */
     fun setScaleY(y: Float) {
-        this.scale.y = y
-        localMatrixUpdateRequired = true
+        TransformStore.setScale(transformSlot, 1, y)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -457,8 +750,8 @@ open class Entity {
      * @param z Z component of scale
      */
     fun setScaleZ(z: Float) {
-        this.scale.z = z
-        localMatrixUpdateRequired = true
+        TransformStore.setScale(transformSlot, 2, z)
+        invalidateLocalMatrix()
     }
 
     /**
@@ -486,6 +779,17 @@ open class Entity {
         return EntityAnimator(this)
     }
 
+    /**
+     * Apply changed opacity to this and descendants.
+     */
+    internal fun resolveOpacity() {
+        if (isOpacityChanged) {
+            // Change while applying is queued again
+            isOpacityChanged = false
+            updateOpacity()
+        }
+    }
+
     private fun updateOpacity() {
 
         val surfaceRendererComponent = getComponent<SurfaceRendererComponent>()
@@ -532,7 +836,17 @@ open class Entity {
         }
     }
 
-    private external fun setWorldModelMatrix(nativePtr: Long, matrix: FloatArray)
+    /**
+     * Same order as `mgn::RenderQueue` in native.
+     */
+    enum class RenderQueue {
+        /** Drawn first, front to back, without blending. */
+        OPAQUE,
+        /** Drawn after opaque, front to back, without blending. Pixels may be discarded. */
+        ALPHA_TESTED,
+        /** Drawn last, back to front, with blending. */
+        TRANSPARENT
+    }
 
     companion object {
 
@@ -563,5 +877,34 @@ open class Entity {
                 add(GeometryComponent.from(drawable))
             }
         }
+
+        /**
+         * Create Entity from [Bitmap]. New Entity has plane geometry.
+         *
+         * @param bitmap Static image for surface.
+         * @return new Entity
+         */
+        fun from(bitmap: Bitmap): Entity {
+
+            return Entity().apply {
+                add(SurfaceRendererComponent.from(bitmap))
+                add(GeometryComponent.from(bitmap))
+            }
+        }
+
+        /**
+         * Create Entity from [Drawable] which never changes. New Entity has plane geometry.
+         * Surface is uploaded once as static image.
+         *
+         * @param drawable Drawable for surface.
+         * @return new Entity
+         */
+        fun fromStatic(drawable: Drawable): Entity {
+
+            return Entity().apply {
+                add(SurfaceRendererComponent.fromStatic(drawable))
+                add(GeometryComponent.from(drawable))
+            }
+        }
     }
 }
@@ -0,0 +1,150 @@
+package org.meganekkovr
+
+import android.util.Log
+
+/**
+ * Id index of all [Entity]s in a [Scene].
+ * Kept up to date by [Entity.add], [Entity.remove], [Entity.id] and [Entity.setId].
+ * Several Entities can have same id. Lookup returns the first one in depth-first order,
+ * same as walking the tree.
+ */
+internal class EntityIndex {
+
+    private val intIds = HashMap<Int, ArrayList<Entity>>()
+    private val stringIds = HashMap<String, ArrayList<Entity>>()
+
+    // Registered distinct strings of each hashed id for collision detection
+    private val hashedStrings = HashMap<Int, ArrayList<String>>()
+
+    /**
+     * Register [entity] and all its descendants.
+     */
+    fun addSubtree(entity: Entity) {
+        add(entity)
+        entity.children.forEach { child -> addSubtree(child) }
+    }
+
+    /**
+     * Unregister [entity] and all its descendants.
+     */
+    fun removeSubtree(entity: Entity) {
+        remove(entity)
+        entity.children.forEach { child -> removeSubtree(child) }
+    }
+
+    fun add(entity: Entity) {
+        val stringId = entity.stringId
+        if (stringId != null) {
+            checkCollision(stringId, entity.id)
+            stringIds.getOrPut(stringId) { ArrayList(1) }.add(entity)
+        }
+
+        if (entity.id != 0) {
+            intIds.getOrPut(entity.id) { ArrayList(1) }.add(entity)
+        }
+    }
+
+    fun remove(entity: Entity) {
+        val stringId = entity.stringId
+        if (stringId != null) {
+            removeFrom(stringIds, stringId, entity)
+
+            // Keep other strings which share the hash
+            if (!stringIds.containsKey(stringId)) {
+                val strings = hashedStrings[entity.id]
+                if (strings != null) {
+                    strings.remove(stringId)
+                    if (strings.isEmpty()) hashedStrings.remove(entity.id)
+                }
+            }
+        }
+
+        if (entity.id != 0) {
+            removeFrom(intIds, entity.id, entity)
+        }
+    }
+
+    /**
+     * Find first Entity in depth-first order which has [id] and is [root] or its descendant.
+     */
+    fun find(id: Int, root: Entity): Entity? {
+        return findFirst(intIds[id], root, false)
+    }
+
+    /**
+     * Find first Entity in depth-first order which has string [id] and is [root] or its descendant.
+     * Entities with integer id equal to `id.hashCode()` are also found for compatibility
+     * if no Entity has string id.
+     */
+    fun find(id: String, root: Entity): Entity? {
+        return findFirst(stringIds[id], root, false) ?: findFirst(intIds[id.hashCode()], root, true)
+    }
+
+    private fun findFirst(entities: List<Entity>?, root: Entity, integerIdOnly: Boolean): Entity? {
+        if (entities == null) return null
+
+        var first: Entity? = null
+        for (i in 0 until entities.size) {
+            val entity = entities[i]
+            if (integerIdOnly && entity.stringId != null) continue
+            if (!entity.isDescendantOf(root)) continue
+            if (first == null || precedes(entity, first)) first = entity
+        }
+        return first
+    }
+
+    /**
+     * @return `true` if [a] comes before [b] in depth-first order.
+     */
+    private fun precedes(a: Entity, b: Entity): Boolean {
+        val pathA = pathFromRoot(a)
+        val pathB = pathFromRoot(b)
+
+        // Ancestor comes first
+        var i = 0
+        while (i < pathA.size && i < pathB.size && pathA[i] === pathB[i]) i++
+        if (i == pathA.size) return true
+        if (i == pathB.size) return false
+
+        // Siblings under common ancestor
+        val siblings = pathA[i - 1].children
+        return siblings.indexOf(pathA[i]) < siblings.indexOf(pathB[i])
+    }
+
+    private fun pathFromRoot(entity: Entity): List<Entity> {
+        val path = ArrayList<Entity>()
+        var e: Entity? = entity
+        while (e != null) {
+            path.add(e)
+            e = e.parent
+        }
+        path.reverse()
+        return path
+    }
+
+    private fun checkCollision(stringId: String, hash: Int) {
+        val strings = hashedStrings.getOrPut(hash) { ArrayList(1) }
+        if (!strings.contains(stringId)) {
+            if (strings.isNotEmpty()) {
+                Log.w(TAG, "Entity id \"$stringId\" has same hash code as \"${strings[0]}\". Use findById(String) to distinguish them.")
+            }
+            strings.add(stringId)
+        }
+
+        if (intIds[hash]?.any { it.stringId == null } == true) {
+            Log.w(TAG, "Entity id \"$stringId\" has same hash code as integer id $hash.")
+        }
+    }
+
+    private fun <K> removeFrom(map: HashMap<K, ArrayList<Entity>>, key: K, entity: Entity) {
+        val entities = map[key] ?: return
+        entities.remove(entity)
+        if (entities.isEmpty()) {
+            map.remove(key)
+        }
+    }
+
+    companion object {
+        private const val TAG = "EntityIndex"
+    }
+}
@@ -0,0 +1,101 @@
+package org.meganekkovr
+
+import android.graphics.Rect
+
+/**
+ * Per-frame statistics of Meganekko's internal work.
+ * Values are updated once per frame in GL thread. Read them from GL thread, for example in [MeganekkoApp.update].
+ */
+object FrameStats {
+
+    /**
+     * Number of world model matrices uploaded to native side in last frame.
+     */
+    @JvmStatic
+    var worldMatrixUploads: Int = 0
+        internal set
+
+    /**
+     * Number of JNI transitions saved in last frame by uploading world model matrices in single call
+     * instead of one call per dirty [Entity].
+     */
+    @JvmStatic
+    var jniCallsSaved: Int = 0
+        internal set
+
+    /**
+     * Number of dirty subtrees whose transforms were computed in parallel in last frame.
+     */
+    @JvmStatic
+    var parallelTransformSubtrees: Int = 0
+        internal set
+
+    /**
+     * Number of surfaces submitted to rendering in last frame.
+     */
+    @JvmStatic
+    var submittedSurfaces: Int = 0
+        internal set
+
+    /**
+     * Number of surfaces skipped by frustum culling in last frame.
+     */
+    @JvmStatic
+    var culledSurfaces: Int = 0
+        internal set
+
+    /**
+     * Number of native objects waiting for deletion after last frame.
+     */
+    @JvmStatic
+    var pendingNativeDeletions: Int = 0
+        internal set
+
+    /**
+     * Number of native objects deleted by garbage collection in last frame.
+     */
+    @JvmStatic
+    var nativeDeletions: Int = 0
+        internal set
+
+    /**
+     * Longest time in microseconds spent for deleting native objects in a frame since app started.
+     */
+    @JvmStatic
+    var longestNativeDeletionMicros: Long = 0
+        internal set
+
+    /**
+     * Number of pixels redrawn by [SurfaceRendererComponent.CanvasRenderer]s in last frame.
+     */
+    @JvmStatic
+    var redrawnCanvasPixels: Long = 0
+        internal set
+
+    /**
+     * Number of pixels of redrawn surfaces which were kept by dirty rects in last frame.
+     */
+    @JvmStatic
+    var skippedCanvasPixels: Long = 0
+        internal set
+
+    // Accumulated while updating
+    private var pendingRedrawnCanvasPixels: Long = 0
+    private var pendingSkippedCanvasPixels: Long = 0
+
+    internal fun addCanvasRedraw(dirty: Rect, width: Int, height: Int) {
+        val redrawn = dirty.width().toLong() * dirty.height()
+        pendingRedrawnCanvasPixels += redrawn
+        pendingSkippedCanvasPixels += width.toLong() * height - redrawn
+    }
+
+    /**
+     * Called from [org.meganekkovr.GearVRActivity.update] after all surfaces are drawn.
+     */
+    internal fun publishCanvasRedraws() {
+        redrawnCanvasPixels = pendingRedrawnCanvasPixels
+        skippedCanvasPixels = pendingSkippedCanvasPixels
+        pendingRedrawnCanvasPixels = 0
+        pendingSkippedCanvasPixels = 0
+    }
+}
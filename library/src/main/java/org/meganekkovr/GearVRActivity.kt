@@ -11,6 +11,10 @@ open class GearVRActivity : VrActivity(), MeganekkoContext {
 
     lateinit var app: MeganekkoApp
     private lateinit var frame: FrameInput
+    private val surfaceStats = IntArray(2)
+
+    // Same as default value of native side
+    private var frustumCulling = true
 
     override val context: Context
         get() = this
@@ -116,21 +120,35 @@ open class GearVRActivity : VrActivity(), MeganekkoContext {
 
         HeadTransform.instance.invalidate()
 
+        // Stats of last rendering
+        getSurfaceStats(appPtr, surfaceStats)
+        FrameStats.submittedSurfaces = surfaceStats[0]
+        FrameStats.culledSurfaces = surfaceStats[1]
+
         app.update(frame)
 
+        // Draw dirty regions of shared surfaces
+        SurfaceAtlas.flushAll()
+        FrameStats.publishCanvasRedraws()
+
+        // Resolve transform changes and apply them to native side
+        TransformScheduler.flush()
+        WorldMatrixUploader.flush()
+
+        val frustumCullingEnabled = app.isFrustumCullingEnabled
+        if (frustumCulling != frustumCullingEnabled) {
+            setFrustumCullingEnabled(appPtr, frustumCullingEnabled)
+            frustumCulling = frustumCullingEnabled
+        }
+
+        // Send Entities to be rendered. This must be done before deleting native objects.
+        RenderList.update(appPtr, app.scene)
+
         // Clean native resources
         NativeReference.gc()
-    }
 
-    /**
-     * Called from native thread.
-     *
-     * @param surfacesPointer `&ovrFrameResult.Surfaces` value.
-     */
-    private fun collectSurfaceDefs(surfacesPointer: Long) {
-        val scene = app.scene ?: return
-
-        collectSurfaceDefs(scene, surfacesPointer)
+        // Reclaim transform slots
+        TransformStore.gc()
     }
 
     /**
@@ -165,25 +183,6 @@ open class GearVRActivity : VrActivity(), MeganekkoContext {
         getClearColor(appPtr, clearColor)
     }
 
-    /**
-     * Prepare for rendering.
-     *
-     * @param surfacesPointer `&res.Surfaces`
-     */
-    private fun collectSurfaceDefs(entity: Entity, surfacesPointer: Long) {
-
-        // Not visible
-        if (!entity.isVisible) return
-
-        // Check Entity has geometry and surface
-        if (entity.isRenderable) {
-            addSurfaceDef(entity.nativePointer, surfacesPointer)
-        }
-
-        // Recursive for all children
-        entity.children.forEach { child -> collectSurfaceDefs(child, surfacesPointer) }
-    }
-
     private external fun setClearColorBuffer(appPtr: Long, clearColorBuffer: Boolean)
 
     private external fun getClearColorBuffer(appPtr: Long): Boolean
@@ -192,7 +191,9 @@ open class GearVRActivity : VrActivity(), MeganekkoContext {
 
     private external fun getClearColor(appPtr: Long, clearColor: FloatArray)
 
-    private external fun addSurfaceDef(entityNativePtr: Long, surfacesPointer: Long)
+    private external fun setFrustumCullingEnabled(appPtr: Long, frustumCullingEnabled: Boolean)
+
+    private external fun getSurfaceStats(appPtr: Long, stats: IntArray)
 
     companion object {
 
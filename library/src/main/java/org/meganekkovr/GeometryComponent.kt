@@ -18,6 +18,8 @@ class GeometryComponent : Component() {
 
     private external fun setEntityGeometry(entityPtr: Long, nativePtr: Long)
 
+    private external fun removeEntityGeometry(entityPtr: Long, nativePtr: Long)
+
     private external fun build(nativePtr: Long, positions: FloatArray, colors: FloatArray, uvs: FloatArray, triangles: IntArray)
 
     private external fun buildGlobe(nativePtr: Long)
@@ -33,6 +35,16 @@ class GeometryComponent : Component() {
         setEntityGeometry(entity.nativePointer, nativePointer)
     }
 
+    override fun onDetach(entity: Entity) {
+        super.onDetach(entity)
+        removeEntityGeometry(entity.nativePointer, nativePointer)
+    }
+
+    override fun dispose() {
+        super.dispose()
+        _nativePointer.release()
+    }
+
     /**
      * Build big sphere with inverted normals.
      * This is often used for a projecting equirectangular photo or video.
@@ -27,6 +27,52 @@ open class MeganekkoApp {
             }
         }
 
+    /**
+     * Enable parallel world model matrix computation for large dirty subtrees.
+     * Default value is `false`.
+     */
+    var isParallelTransformEnabled: Boolean
+        get() = TransformScheduler.parallelEnabled
+        set(parallelTransformEnabled) {
+            TransformScheduler.parallelEnabled = parallelTransformEnabled
+        }
+
+    /**
+     * Minimum number of Entities in a dirty subtree to compute its transforms in parallel.
+     * This is effective only if [isParallelTransformEnabled] is `true`.
+     */
+    var parallelTransformThreshold: Int
+        get() = TransformScheduler.parallelThreshold
+        set(parallelTransformThreshold) {
+            TransformScheduler.parallelThreshold = parallelTransformThreshold
+        }
+
+    /**
+     * Maximum time in microseconds spent for deleting garbage collected native objects per frame.
+     * Remaining objects are deleted in following frames. Default value is 2000.
+     */
+    var nativeDeletionBudgetMicros: Long
+        get() = NativeReference.budgetMicros
+        set(nativeDeletionBudgetMicros) {
+            NativeReference.budgetMicros = nativeDeletionBudgetMicros
+        }
+
+    /**
+     * Maximum number of [SurfaceRendererComponent.CanvasRenderer]s rasterized on worker threads at the same time.
+     * This is effective for [SurfaceRendererComponent.isAsync] components. Default value is 2.
+     */
+    var maxAsyncCanvasRasterizations: Int
+        get() = CanvasRasterizer.maxInFlight
+        set(maxAsyncCanvasRasterizations) {
+            CanvasRasterizer.maxInFlight = maxAsyncCanvasRasterizations
+        }
+
+    /**
+     * Skip rendering Entities whose geometry bounds are outside of both eyes' view frustums.
+     * Default value is `true`.
+     */
+    var isFrustumCullingEnabled = true
+
     private lateinit var meganekkoContext: MeganekkoContext
     private var glThreadId: Long = 0
     private var xmlParser: XmlParser? = null
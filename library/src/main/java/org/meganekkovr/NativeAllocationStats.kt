@@ -0,0 +1,73 @@
+package org.meganekkovr
+
+/**
+ * Snapshot of live native allocations. Get it with [query].
+ * Bytes are estimated from object sizes, texture sizes and vertex counts.
+ * Use this to watch memory usage or find leaks.
+ */
+class NativeAllocationStats private constructor(private val values: LongArray) {
+
+    /**
+     * Type of native allocation. Order must be same as `mgn::AllocationType`.
+     */
+    enum class Type {
+        /** All native objects held by Java. Only count is available. */
+        HYBRID_OBJECT,
+        ENTITY,
+        GEOMETRY_COMPONENT,
+        SURFACE_RENDERER_COMPONENT,
+        SURFACE_DEF,
+        TEXTURE,
+        GEOMETRY_BUFFER
+    }
+
+    /**
+     * @param type Allocation type.
+     * @return Number of live allocations.
+     */
+    fun getCount(type: Type): Long = values[type.ordinal * 2]
+
+    /**
+     * @param type Allocation type.
+     * @return Estimated bytes of live allocations.
+     */
+    fun getBytes(type: Type): Long = values[type.ordinal * 2 + 1]
+
+    /**
+     * Estimated bytes of all live allocations.
+     */
+    val totalBytes: Long
+        get() = Type.values().fold(0L) { sum, type -> sum + getBytes(type) }
+
+    override fun toString(): String {
+        return Type.values().joinToString(prefix = "NativeAllocationStats(", postfix = ")") { type ->
+            "$type=${getCount(type)}/${getBytes(type)}B"
+        }
+    }
+
+    companion object {
+
+        /**
+         * Get current native allocations in single JNI call. Can be called from any thread.
+         *
+         * @return Snapshot of native allocations.
+         */
+        @JvmStatic
+        fun query(): NativeAllocationStats {
+            val values = LongArray(Type.values().size * 2)
+            getStats(values)
+            return NativeAllocationStats(values)
+        }
+
+        /**
+         * Log GL textures, geometry buffers and programs whose native owner was deleted
+         * without releasing them. Each leak is logged once.
+         * Called after [Scene.dispose] and after garbage collected native objects are deleted.
+         */
+        @JvmStatic
+        external fun logLeakedGlResources()
+
+        @JvmStatic
+        private external fun getStats(values: LongArray)
+    }
+}
@@ -1,45 +1,84 @@
 package org.meganekkovr
 
-import java.lang.ref.WeakReference
-
 /**
  * Represents native pointer.
  * Many objects can have single [NativePointer].
+ * Every owner obtained by [getInstance] or [retain] should call [release] when it no longer uses native object.
+ * Native object is deleted immediately when last owner releases it.
  * If no object has reference to [NativePointer], it will be garbage collected.
  * If [NativePointer] is garbage collected, [NativeReference.gc] will delete native pointer.
  * object *---1 [NativePointer] 1---1 [NativeReference]
  */
-internal class NativePointer private constructor(private val mPtr: Long) {
+internal class NativePointer internal constructor(private val mPtr: Long) {
 
-    init {
-        sInstances.add(NativeReference(this))
-    }
+    /**
+     * Reference which deletes native object on garbage collection.
+     */
+    internal lateinit var reference: NativeReference
+
+    private var refCount = 0
+
+    /**
+     * `true` if native object has been deleted by [release].
+     */
+    var isReleased = false
+        private set
 
     /**
      * @return Native pointer value
      */
     fun get(): Long {
+        check(!isReleased) { "Native object has been already released." }
         return mPtr
     }
 
-    companion object {
-        // This holds all instance references
-        private val sInstances = mutableSetOf<WeakReference<NativePointer>>()
-
-        @JvmStatic
-        fun getInstance(ptr: Long): NativePointer {
+    /**
+     * Add owner.
+     */
+    fun retain() {
+        synchronized(NativePointerTable) {
+            check(!isReleased) { "Native object has been already released." }
+            refCount++
+        }
+    }
 
-            // Find existing instance for ptr
-            for (instanceRef in sInstances) {
-                val instance = instanceRef.get() ?: continue
+    /**
+     * Remove owner. Delete native object if this is the last owner.
+     */
+    fun release() {
+        synchronized(NativePointerTable) {
+            if (isReleased) return
 
-                if (instance.mPtr == ptr) {
-                    return instance
-                }
+            if (--refCount <= 0) {
+                isReleased = true
+                NativePointerTable.remove(reference)
+                reference.deleteNow()
             }
+        }
+    }
+
+    /**
+     * Keep [dependency] alive while this native object exists. It is released when this native object
+     * is deleted by [release] or garbage collection.
+     */
+    fun addDependency(dependency: NativePointer) {
+        synchronized(NativePointerTable) {
+            check(!isReleased) { "Native object has been already released." }
+            reference.addDependency(dependency)
+        }
+    }
 
-            // create new one
-            return NativePointer(ptr)
+    companion object {
+
+        /**
+         * Get shared [NativePointer] of [ptr] and [retain] it.
+         *
+         * @param ptr Native pointer value.
+         * @return NativePointer
+         */
+        @JvmStatic
+        fun getInstance(ptr: Long): NativePointer {
+            return NativePointerTable.getOrCreate(ptr).also { it.retain() }
         }
     }
 }
@@ -0,0 +1,134 @@
+package org.meganekkovr
+
+/**
+ * Intern table of [NativePointer] keyed by native pointer value.
+ * Open addressing hash table with linear probing on primitive `long` keys,
+ * so lookup and insertion are O(1) and no boxing occurs.
+ * Entries are removed by [NativeReference.gc] when their [NativePointer] is garbage collected.
+ */
+internal object NativePointerTable {
+
+    private const val INITIAL_CAPACITY = 1024
+
+    private var keys = LongArray(INITIAL_CAPACITY)
+    private var references = arrayOfNulls<NativeReference>(INITIAL_CAPACITY)
+    private var mask = INITIAL_CAPACITY - 1
+
+    /**
+     * Number of entries.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Number of slots. Always power of two.
+     */
+    internal val capacity: Int
+        get() = keys.size
+
+    /**
+     * Get [NativePointer] for [ptr]. Create new one if it does not exist.
+     *
+     * @param ptr Native pointer value.
+     * @return NativePointer
+     */
+    @Synchronized
+    fun getOrCreate(ptr: Long): NativePointer {
+
+        var i = indexOf(ptr)
+        while (true) {
+            val ref = references[i] ?: break
+
+            if (keys[i] == ptr) {
+                val instance = ref.get()
+                if (instance != null) return instance
+
+                // Cleared but not collected yet. New instance takes over native object.
+                return NativePointer(ptr).also {
+                    references[i] = createReference(it)
+                    ref.disown(it.reference)
+                }
+            }
+
+            i = (i + 1) and mask
+        }
+
+        val instance = NativePointer(ptr)
+        keys[i] = ptr
+        references[i] = createReference(instance)
+        size++
+
+        // Keep load factor under 0.5
+        if (size * 2 > keys.size) grow()
+
+        return instance
+    }
+
+    /**
+     * Remove entry of [ref]. Do nothing if entry has been replaced by another reference.
+     *
+     * @param ref Collected reference.
+     */
+    @Synchronized
+    fun remove(ref: NativeReference) {
+
+        var i = indexOf(ref.ptr)
+        while (true) {
+            val current = references[i] ?: return
+            if (current === ref) break
+            i = (i + 1) and mask
+        }
+
+        // Shift following entries back to fill the hole
+        var hole = i
+        var j = i
+        while (true) {
+            j = (j + 1) and mask
+            val ref = references[j] ?: break
+            val home = indexOf(keys[j])
+
+            // Move if its home is not in (hole, j]
+            val inRange = if (hole <= j) home in (hole + 1)..j else home > hole || home <= j
+            if (!inRange) {
+                keys[hole] = keys[j]
+                references[hole] = ref
+                hole = j
+            }
+        }
+
+        keys[hole] = 0
+        references[hole] = null
+        size--
+    }
+
+    private fun createReference(instance: NativePointer): NativeReference {
+        return NativeReference(instance).also { instance.reference = it }
+    }
+
+    /**
+     * @return Home slot of [ptr] in current table.
+     */
+    internal fun indexOf(ptr: Long): Int {
+        val h = ptr * -0x61c8864680b583ebL
+        return (h xor (h ushr 32)).toInt() and mask
+    }
+
+    private fun grow() {
+        val oldKeys = keys
+        val oldReferences = references
+
+        keys = LongArray(oldKeys.size * 2)
+        references = arrayOfNulls(oldKeys.size * 2)
+        mask = keys.size - 1
+
+        for (i in 0 until oldKeys.size) {
+            val ref = oldReferences[i] ?: continue
+            var j = indexOf(oldKeys[i])
+            while (references[j] != null) {
+                j = (j + 1) and mask
+            }
+            keys[j] = oldKeys[i]
+            references[j] = ref
+        }
+    }
+}
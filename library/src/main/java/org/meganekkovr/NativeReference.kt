@@ -1,41 +1,142 @@
 package org.meganekkovr
 
+import android.util.Log
 import java.lang.ref.ReferenceQueue
 import java.lang.ref.WeakReference
+import java.util.ArrayDeque
 
 /**
  * This class handles native resource garbage collection.
  */
 internal class NativeReference(nativePointer: NativePointer) : WeakReference<NativePointer>(nativePointer, sReferenceQueue) {
 
-    private var mNativePointer = nativePointer.get()
+    /**
+     * Native pointer value. Key in [NativePointerTable].
+     */
+    val ptr = nativePointer.get()
+
+    private var mNativePointer = ptr
+
+    // Native objects used by this native object. Released after it is deleted.
+    private var dependencies: ArrayList<NativePointer>? = null
+
+    internal val dependencyCount: Int
+        get() = dependencies?.size ?: 0
+
+    /**
+     * Retain [dependency] until native object is deleted by [deleteNow] or garbage collection.
+     */
+    fun addDependency(dependency: NativePointer) {
+        dependency.retain()
+        val dependencies = dependencies ?: ArrayList<NativePointer>(1).also { dependencies = it }
+        dependencies.add(dependency)
+    }
+
+    /**
+     * Give up ownership of native object. It will not be deleted by this reference.
+     *
+     * @param successor Reference which takes over native object and its dependencies.
+     */
+    fun disown(successor: NativeReference) {
+        mNativePointer = 0
+        successor.dependencies = dependencies
+        dependencies = null
+    }
+
+    /**
+     * Delete native pointer now. Called when [NativePointer] is released by its owners.
+     */
+    fun deleteNow() {
+        clear()
+        delete()
+    }
 
     /**
      * Delete native pointer.
+     *
+     * @return `true` if native object was deleted.
      */
-    private fun delete() {
+    private fun delete(): Boolean {
         if (mNativePointer != 0L) {
             delete(mNativePointer)
             mNativePointer = 0
+
+            dependencies?.forEach { it.release() }
+            dependencies = null
+            return true
         }
+        return false
     }
 
     private external fun delete(nativePointer: Long)
 
     companion object {
 
+        private const val TAG = "NativeReference"
+        private const val DEFAULT_BUDGET_MICROS = 2000L
+
         private val sReferenceQueue = ReferenceQueue<NativePointer>()
 
+        // Collected references waiting for deletion
+        private val backlog = ArrayDeque<NativeReference>()
+
+        // Leaks deleted since backlog was last empty. Reported once per batch.
+        private var batchLeaks = 0
+
+        /**
+         * Maximum time in microseconds spent for deleting native objects per frame.
+         * Remaining objects are deleted in following frames.
+         */
+        @Volatile
+        var budgetMicros = DEFAULT_BUDGET_MICROS
+            set(budgetMicros) {
+                require(budgetMicros > 0) { "budgetMicros must be positive." }
+                field = budgetMicros
+            }
+
         /**
-         * Called from [org.meganekkovr.MeganekkoApp.update].
+         * Called from [org.meganekkovr.GearVRActivity.update].
+         * Delete native objects of garbage collected [NativePointer]s within [budgetMicros].
+         * At least one object is deleted per call if any.
          */
         @JvmStatic
         fun gc() {
 
+            // Collect all. This is cheap.
             while (true) {
-                val ref = NativeReference.sReferenceQueue.poll() ?: break
-                (ref as? NativeReference)?.delete()
+                val ref = NativeReference.sReferenceQueue.poll() as? NativeReference ?: break
+                synchronized(NativePointerTable) {
+                    NativePointerTable.remove(ref)
+                }
+                backlog.add(ref)
+            }
+
+            var deletions = 0
+            var leaks = 0
+            val start = System.nanoTime()
+            val deadline = start + budgetMicros * 1000
+            while (true) {
+                val ref = backlog.poll() ?: break
+                deletions++
+                if (ref.delete()) leaks++
+
+                if (System.nanoTime() >= deadline) break
+            }
+
+            val elapsedMicros = (System.nanoTime() - start) / 1000
+            FrameStats.pendingNativeDeletions = backlog.size
+            FrameStats.nativeDeletions = deletions
+            if (deletions > 0 && elapsedMicros > FrameStats.longestNativeDeletionMicros) {
+                FrameStats.longestNativeDeletionMicros = elapsedMicros
+            }
+
+            // Native objects should be released with dispose()
+            batchLeaks += leaks
+            if (batchLeaks > 0 && backlog.isEmpty()) {
+                Log.w(TAG, "$batchLeaks native objects were deleted by garbage collection. Call dispose() to release them immediately.")
+                batchLeaks = 0
+                NativeAllocationStats.logLeakedGlResources()
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package org.meganekkovr
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Visits every node of a tree parent-first, either sequentially or across cores
+ * with a fork-join pool. Used by [TransformScheduler] to compute large dirty subtrees.
+ *
+ * @param T Node type.
+ */
+internal abstract class ParallelTreeWalk<T> {
+
+    abstract fun childCount(node: T): Int
+
+    abstract fun child(node: T, index: Int): T
+
+    /**
+     * @return Number of nodes in subtree including [node].
+     */
+    abstract fun subtreeSize(node: T): Int
+
+    /**
+     * Called for each node after its parent. May be called from any worker thread.
+     */
+    abstract fun visit(node: T)
+
+    /**
+     * Visit subtree in this thread.
+     */
+    fun walk(node: T) {
+        visit(node)
+
+        for (i in 0 until childCount(node)) {
+            walk(child(node, i))
+        }
+    }
+
+    /**
+     * Visit subtree across [pool] and wait for completion.
+     * Work is split so that every worker gets a part of [threshold] sized subtree.
+     *
+     * @param threshold Minimum subtree size computed in parallel.
+     */
+    fun walkParallel(pool: ForkJoinPool, root: T, threshold: Int) {
+        val splitSize = Math.max(threshold / pool.parallelism, MIN_SPLIT_SIZE)
+        pool.invoke(SplitAction(root, splitSize))
+    }
+
+    /**
+     * Visits node and splits its children into tasks.
+     * Large child subtrees are split recursively. Small ones are batched until
+     * the batch reaches [splitSize].
+     */
+    private inner class SplitAction(private val node: T, private val splitSize: Int) : RecursiveAction() {
+
+        override fun compute() {
+            visit(node)
+
+            val forked = ArrayList<ForkJoinTask<Void>>()
+            var batch = ArrayList<T>()
+            var batchSize = 0
+
+            for (i in 0 until childCount(node)) {
+                val child = child(node, i)
+                val size = subtreeSize(child)
+                if (size >= splitSize) {
+                    forked.add(SplitAction(child, splitSize).fork())
+                } else {
+                    batch.add(child)
+                    batchSize += size
+                    if (batchSize >= splitSize) {
+                        forked.add(BatchAction(batch).fork())
+                        batch = ArrayList()
+                        batchSize = 0
+                    }
+                }
+            }
+
+            // Compute the rest in this thread
+            batch.forEach(::walk)
+
+            forked.forEach { it.join() }
+        }
+    }
+
+    /**
+     * Visits small subtrees sequentially.
+     */
+    private inner class BatchAction(private val nodes: List<T>) : RecursiveAction() {
+
+        override fun compute() {
+            nodes.forEach(::walk)
+        }
+    }
+
+    companion object {
+        private const val MIN_SPLIT_SIZE = 64
+    }
+}
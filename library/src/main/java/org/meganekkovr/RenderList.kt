@@ -0,0 +1,68 @@
+package org.meganekkovr
+
+/**
+ * Native pointers of all Entities to be rendered in current [Scene].
+ * List is rebuilt only when scene graph structure, visibility or renderability has changed,
+ * and sent to native side in single JNI call. Static scene costs nothing to submit.
+ */
+internal object RenderList {
+
+    private var pointers = LongArray(256)
+    private var size = 0
+    private var scene: Scene? = null
+
+    @Volatile
+    private var dirty = true
+
+    /**
+     * Request rebuild of render list. Can be called from any thread.
+     */
+    fun invalidate() {
+        dirty = true
+    }
+
+    /**
+     * Called from [org.meganekkovr.GearVRActivity.update].
+     * Rebuild render list and send it to native side if necessary.
+     *
+     * @param appPtr Native app pointer.
+     * @param scene  Current Scene.
+     */
+    fun update(appPtr: Long, scene: Scene?) {
+        if (!dirty && this.scene === scene) return
+
+        // Clear first. Changes while rebuilding will be applied in next frame.
+        dirty = false
+        this.scene = scene
+
+        size = 0
+        if (scene != null) {
+            collect(scene)
+        }
+
+        setRenderList(appPtr, pointers, size)
+    }
+
+    private fun collect(entity: Entity) {
+
+        // Not visible
+        if (!entity.isVisible) return
+
+        // Check Entity has geometry and surface
+        if (entity.isRenderable) {
+            if (size == pointers.size) {
+                pointers = pointers.copyOf(size * 2)
+            }
+            pointers[size++] = entity.nativePointer
+        }
+
+        // Recursive for all children
+        val children = entity.children
+        for (i in 0 until children.size) {
+            collect(children[i])
+        }
+    }
+
+    @JvmStatic
+    private external fun setRenderList(appPtr: Long, entityPointers: LongArray, count: Int)
+}
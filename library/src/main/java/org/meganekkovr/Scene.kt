@@ -3,11 +3,52 @@ package org.meganekkovr
 open class Scene : Entity() {
     private var initialized: Boolean = false
 
+    /**
+     * Id index of all Entities in this Scene.
+     */
+    internal val index = EntityIndex()
+
+    internal val componentRegistry = ComponentRegistry(this)
+
+    internal val tickList = TickList()
+
     /**
      * Called before first rendering.
      */
     open fun init() {}
 
+    /**
+     * Add [ComponentSystem]. Components of [ComponentSystem.type] in this Scene are
+     * updated by the system instead of one by one. Only one system can be added per type.
+     *
+     * @param system ComponentSystem
+     * @return `true` if Successfully added. Otherwise `false`.
+     */
+    fun add(system: ComponentSystem<*>): Boolean = componentRegistry.add(system)
+
+    /**
+     * Remove [ComponentSystem]. Components of [ComponentSystem.type] are updated by this Scene one by one again.
+     *
+     * @param system ComponentSystem
+     * @return `true` if Successfully removed. Otherwise `false`.
+     */
+    fun remove(system: ComponentSystem<*>): Boolean = componentRegistry.remove(system)
+
+    /**
+     * Updates all Entities and Components in this Scene which override `update`.
+     * If you override this method, you must call `super.update(frame)`.
+     */
+    override fun update(frame: FrameInput) {
+        super.update(frame)
+
+        tickList.update(frame)
+
+        // Update components handled by systems
+        componentRegistry.update(frame)
+
+        tickList.updateOpacity()
+    }
+
     /**
      * Called when this Scene is activated by [MeganekkoApp.setScene].
      * If you override this method, you must call `super.onStartRendering()`.
@@ -24,6 +65,14 @@ open class Scene : Entity() {
      */
     open fun onStopRendering() {}
 
+    /**
+     * Release native resources of this Scene and log GL resources leaked by them.
+     */
+    override fun dispose() {
+        super.dispose()
+        NativeAllocationStats.logLeakedGlResources()
+    }
+
     open fun onKeyPressed(keyCode: Int, repeatCount: Int): Boolean = false
 
     open fun onKeyDoubleTapped(keyCode: Int, repeatCount: Int): Boolean = false
@@ -0,0 +1,190 @@
+package org.meganekkovr
+
+import android.graphics.PorterDuff
+import android.graphics.Rect
+import org.meganekkovr.util.RectPacker
+import java.lang.ref.WeakReference
+
+/**
+ * Shared surface for many small [SurfaceRendererComponent.CanvasRenderer]s like icons.
+ * Each renderer gets a region of one texture, so hundreds of them need only one texture,
+ * one [android.graphics.SurfaceTexture] and one texture update per frame.
+ * Regions are reclaimed when [SurfaceRendererComponent]s are detached.
+ * Shared texture is kept alive until this is disposed and all [SurfaceRendererComponent]s using this
+ * are disposed or garbage collected.
+ *
+ * Create [SurfaceRendererComponent] with [SurfaceRendererComponent.from] or
+ * `SurfaceRendererComponent(atlas)` to render into atlas.
+ * Must be created and used in GL thread.
+ *
+ * @param width  Width of shared surface.
+ * @param height Height of shared surface.
+ */
+class SurfaceAtlas @JvmOverloads constructor(val width: Int = DEFAULT_SIZE, val height: Int = DEFAULT_SIZE) {
+
+    // Owns shared texture and surface
+    internal val component = SurfaceRendererComponent()
+
+    private val packer = RectPacker(width, height)
+    private val regions = ArrayList<Region>()
+    private val dirty = Rect()
+
+    private var isDisposed = false
+
+    init {
+        require(width > 0 && height > 0) { "width and height must be positive." }
+        component.setBufferSize(width, height)
+    }
+
+    /**
+     * Allocate region for [renderer].
+     *
+     * @throws IllegalStateException If atlas has no space for renderer or has been disposed.
+     */
+    internal fun allocate(owner: SurfaceRendererComponent, renderer: SurfaceRendererComponent.CanvasRenderer): Region {
+        check(!isDisposed) { "SurfaceAtlas has been disposed." }
+        require(renderer.width > 0 && renderer.height > 0) { "Renderer size must be positive." }
+
+        // Padding prevents bleeding of neighbors by texture filtering
+        val paddedWidth = renderer.width + PADDING * 2
+        val paddedHeight = renderer.height + PADDING * 2
+
+        var node = packer.allocate(paddedWidth, paddedHeight)
+        if (node == null) {
+            // Retry after reclaiming regions of garbage collected components
+            freeCollected()
+            node = packer.allocate(paddedWidth, paddedHeight)
+        }
+        checkNotNull(node) { "SurfaceAtlas has no space for ${renderer.width}x${renderer.height}." }
+
+        val region = Region(owner, renderer, node, width, height)
+        regions.add(region)
+        invalidate(region)
+        return region
+    }
+
+    /**
+     * Free region. Its space can be reused by other renderers.
+     */
+    internal fun free(region: Region) {
+        if (regions.remove(region)) {
+            packer.free(region.node)
+        }
+    }
+
+    /**
+     * Request redraw of region in next flush.
+     */
+    internal fun invalidate(region: Region) {
+        if (isDisposed) return
+        if (dirty.isEmpty) {
+            dirtyAtlases.add(this)
+        }
+        dirty.union(region.bounds)
+    }
+
+    /**
+     * Request redraw of part of region in next flush.
+     *
+     * @param rect Dirty rect in renderer coordinates.
+     */
+    internal fun invalidate(region: Region, rect: Rect) {
+        if (isDisposed) return
+        if (dirty.isEmpty) {
+            dirtyAtlases.add(this)
+        }
+
+        val left = region.bounds.left
+        val top = region.bounds.top
+        dirty.union(left + rect.left, top + rect.top, left + rect.right, top + rect.bottom)
+    }
+
+    /**
+     * Release shared surface. Regions are not redrawn after this.
+     * Shared texture is deleted when all [SurfaceRendererComponent]s using this are also disposed
+     * or garbage collected.
+     */
+    fun dispose() {
+        if (isDisposed) return
+        isDisposed = true
+        dirtyAtlases.remove(this)
+        component.dispose()
+    }
+
+    private fun freeCollected() {
+        for (i in regions.size - 1 downTo 0) {
+            val region = regions[i]
+            if (region.owner.get() == null) {
+                regions.removeAt(i)
+                packer.free(region.node)
+            }
+        }
+    }
+
+    private fun flush() {
+        if (dirty.isEmpty) return
+
+        val surface = component.surface
+
+        // Surface may expand dirty rect. Redraw all regions in actual dirty rect.
+        val canvas = surface.lockCanvas(dirty)
+        for (i in 0 until regions.size) {
+            val region = regions[i]
+            if (!Rect.intersects(dirty, region.bounds)) continue
+
+            canvas.save()
+            canvas.clipRect(region.bounds)
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR)
+            canvas.translate(region.bounds.left.toFloat(), region.bounds.top.toFloat())
+
+            // One time draw if return true
+            val start = System.nanoTime()
+            region.renderer.onRendered(region.renderer.render(canvas))
+            region.renderer.recordRenderTime(System.nanoTime() - start)
+
+            canvas.restore()
+        }
+        surface.unlockCanvasAndPost(canvas)
+        FrameStats.addCanvasRedraw(dirty, width, height)
+
+        component.surfaceTexture.updateTexImage()
+        dirty.setEmpty()
+    }
+
+    /**
+     * Allocated region of atlas.
+     */
+    internal class Region(owner: SurfaceRendererComponent, val renderer: SurfaceRendererComponent.CanvasRenderer,
+                          val node: RectPacker.Node, atlasWidth: Int, atlasHeight: Int) {
+
+        // Weak to reclaim region of garbage collected component
+        val owner = WeakReference(owner)
+
+        val bounds = Rect(node.x + PADDING, node.y + PADDING, node.x + PADDING + renderer.width, node.y + PADDING + renderer.height)
+
+        // Normalized texture coordinates
+        val u = bounds.left.toFloat() / atlasWidth
+        val v = bounds.top.toFloat() / atlasHeight
+        val uWidth = renderer.width.toFloat() / atlasWidth
+        val vHeight = renderer.height.toFloat() / atlasHeight
+    }
+
+    companion object {
+
+        private const val DEFAULT_SIZE = 1024
+        private const val PADDING = 1
+
+        private val dirtyAtlases = ArrayList<SurfaceAtlas>()
+
+        /**
+         * Called from [org.meganekkovr.GearVRActivity.update].
+         * Draw dirty regions of all atlases.
+         */
+        internal fun flushAll() {
+            for (i in 0 until dirtyAtlases.size) {
+                dirtyAtlases[i].flush()
+            }
+            dirtyAtlases.clear()
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package org.meganekkovr
 
+import android.content.Context
+import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.PorterDuff
+import android.graphics.Rect
 import android.graphics.SurfaceTexture
+import android.graphics.drawable.BitmapDrawable
 import android.graphics.drawable.Drawable
+import android.opengl.GLES20
+import android.opengl.GLUtils
+import android.os.Build
 import android.view.Surface
 import android.view.View
 import android.view.ViewGroup
+import android.widget.FrameLayout
+import java.util.WeakHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * This gives appearance to [Entity] for rendering.
@@ -14,20 +25,130 @@ import android.view.ViewGroup
  * You can use [Canvas] to render custom drawings.
  * [.getSurfaceTexture] or [.getSurface] are usefull if you wish to render video
  * or camera images with [android.media.MediaPlayer] or [android.hardware.Camera].
+ *
+ * Small [CanvasRenderer]s can share one texture with [SurfaceAtlas].
+ * Static images created with [from] [Bitmap] are uploaded once into mipmapped texture.
  */
-class SurfaceRendererComponent : Component() {
+class SurfaceRendererComponent : Component {
+
+    internal val nativePointer: NativePointer
+
+    internal val nativePtr: Long
+        get() = nativePointer.get()
+
+    /**
+     * [SurfaceAtlas] which this renders into. `null` if this has own surface.
+     */
+    val atlas: SurfaceAtlas?
+
+    private var atlasRegion: SurfaceAtlas.Region? = null
+
+    // Static image waiting for upload
+    private var pendingBitmap: Bitmap? = null
+    private var recycleBitmap = false
+
+    /**
+     * `true` if this renders static image.
+     */
+    val isStatic: Boolean
+
+    // Neither atlas nor static image
+    private val hasSurface: Boolean
+        get() = atlas == null && !isStatic
 
-    private val nativePointer = NativePointer.getInstance(newInstance())
     var canvasRenderer: CanvasRenderer? = null
         set(canvasRenderer) {
             field = canvasRenderer
 
-            if (canvasRenderer != null) {
-                surfaceTexture.setDefaultBufferSize(canvasRenderer.width, canvasRenderer.height)
+            if (atlas != null) {
+                updateAtlasRegion()
+            } else if (canvasRenderer != null && !isStatic) {
+                setBufferSize(canvasRenderer.width, canvasRenderer.height)
             }
+
+            updateSleeping()
         }
 
+    /**
+     * Render [canvasRenderer] with hardware accelerated canvas on API level 23 or later.
+     * Software canvas is used on older devices. Set this before first rendering.
+     */
+    var useHardwareCanvas = false
+        set(useHardwareCanvas) {
+            field = useHardwareCanvas
+            listenFrames()
+        }
+
+    private val isHardwareCanvas: Boolean
+        get() = useHardwareCanvas && Build.VERSION.SDK_INT >= 23
+
+    // Hardware canvas is drawn by RenderThread. Latch it when frame becomes available.
+    private var hardwareFramePending = false
+
+    // Start of pending hardware rendering
+    private var hardwareRenderStart = 0L
+
+    private val dirtyRect = Rect()
+
+    /**
+     * Rasterize [canvasRenderer] on worker thread. Texture is updated in first update after rasterization
+     * has completed. [CanvasRenderer.render] must not touch objects used by GL thread.
+     */
+    var isAsync = false
+
+    // Rasterization in flight
+    private var asyncJob: AsyncRasterization? = null
+
+    /**
+     * Update texture whenever producer such as [android.media.MediaPlayer] posts new frame.
+     * This replaces [SurfaceTexture.OnFrameAvailableListener] of [surfaceTexture] while `true`.
+     * Use [onFrameAvailableListener] instead of setting it to [surfaceTexture] directly.
+     */
     var continuousUpdate: Boolean = false
+        set(continuousUpdate) {
+            field = continuousUpdate
+            listenFrames()
+            updateSleeping()
+        }
+
+    /**
+     * Called from listener thread when new frame is posted to [surfaceTexture]
+     * while this listens frames for [continuousUpdate] or hardware canvas.
+     * Otherwise, set listener to [surfaceTexture] directly.
+     */
+    @Volatile
+    var onFrameAvailableListener: SurfaceTexture.OnFrameAvailableListener? = null
+
+    // Frames posted by producer but not latched yet. Set from listener thread.
+    private val availableFrames = AtomicInteger()
+    private var isListeningFrames = false
+
+    /**
+     * Number of frames posted by producer while [continuousUpdate] is `true`.
+     */
+    @Volatile
+    var producedFrames = 0L
+        private set
+
+    /**
+     * Number of frames latched into texture while [continuousUpdate] is `true`.
+     */
+    var latchedFrames = 0L
+        private set
+
+    /**
+     * Number of frames replaced by newer frame before they were latched.
+     * [surfaceTexture] keeps only newest posted frame, and [SurfaceTexture.updateTexImage] latches it.
+     */
+    var droppedFrames = 0L
+        private set
+
+    /**
+     * Pace latch time of video frames against predicted display time while [continuousUpdate] is `true`.
+     * `null` to latch newest frame in every update. Producer must set presentation time
+     * in [System.nanoTime] base to get accurate drift.
+     */
+    var videoFramePacer: VideoFramePacer? = null
 
     /**
      * Get actual opacity for rendering. This value is inherited from parent [Entity].
@@ -48,17 +169,78 @@ class SurfaceRendererComponent : Component() {
             setOpacity(nativePointer.get(), opacity)
         }
 
+    /**
+     * Set `true` if surface has no transparent pixels, such as video.
+     * Opaque surface is rendered with shader without discard, which keeps early depth test enabled.
+     */
+    var isOpaque = false
+        set(isOpaque) {
+            field = isOpaque
+            setOpaque(nativePointer.get(), isOpaque)
+        }
+
     var stereoMode = StereoMode.NORMAL
         set(stereoMode) {
             field = stereoMode
             setStereoMode(nativePointer.get(), stereoMode.ordinal)
         }
 
+    /**
+     * Not available if this renders into [SurfaceAtlas] or renders static image.
+     */
     val surfaceTexture: SurfaceTexture
-        get() = getSurfaceTexture(nativePointer.get())
+        get() {
+            check(hasSurface) { "SurfaceTexture is not available with SurfaceAtlas or static image." }
+            return getSurfaceTexture(nativePointer.get())
+        }
 
+    /**
+     * Not available if this renders into [SurfaceAtlas] or renders static image.
+     */
     val surface: Surface
-        get() = getSurface(nativePointer.get())
+        get() {
+            check(hasSurface) { "Surface is not available with SurfaceAtlas or static image." }
+            return getSurface(nativePointer.get())
+        }
+
+    /**
+     * Create SurfaceRendererComponent which has own surface.
+     */
+    constructor() {
+        atlas = null
+        isStatic = false
+        nativePointer = NativePointer.getInstance(newInstance())
+    }
+
+    /**
+     * Create SurfaceRendererComponent which renders [canvasRenderer] into region of shared [atlas].
+     *
+     * @param atlas Shared surface.
+     */
+    constructor(atlas: SurfaceAtlas) {
+        this.atlas = atlas
+        isStatic = false
+        nativePointer = NativePointer.getInstance(newRegionInstance(atlas.component.nativePtr))
+
+        // Keep shared texture alive until this is disposed or garbage collected
+        nativePointer.addDependency(atlas.component.nativePointer)
+    }
+
+    /**
+     * Create SurfaceRendererComponent which renders static [bitmap].
+     * Bitmap is uploaded in first update.
+     *
+     * @param bitmap  Static image.
+     * @param recycle Recycle bitmap after upload.
+     */
+    private constructor(bitmap: Bitmap, recycle: Boolean) {
+        atlas = null
+        isStatic = true
+        nativePointer = NativePointer.getInstance(newStaticInstance())
+        pendingBitmap = bitmap
+        recycleBitmap = recycle
+        updateSleeping()
+    }
 
     var useChromaKey: Boolean
         get() = getUseChromaKey(nativePointer.get())
@@ -80,10 +262,14 @@ class SurfaceRendererComponent : Component() {
 
     private external fun removeEntityTexture(entityPtr: Long, nativePtr: Long)
 
+    private external fun setTextureSize(nativePtr: Long, width: Int, height: Int)
+
     private external fun setOpacity(nativePtr: Long, opacity: Float)
 
     private external fun setStereoMode(nativePtr: Long, stereoMode: Int)
 
+    private external fun setOpaque(nativePtr: Long, opaque: Boolean)
+
     private external fun setUseChromaKey(nativePtr: Long, useChromaKey: Boolean)
 
     private external fun getUseChromaKey(nativePtr: Long): Boolean
@@ -100,49 +286,300 @@ class SurfaceRendererComponent : Component() {
 
     private external fun newInstance(): Long
 
+    private external fun newRegionInstance(atlasPtr: Long): Long
+
+    private external fun newStaticInstance(): Long
+
+    private external fun getTextureId(nativePtr: Long): Int
+
+    private external fun setTextureRegion(nativePtr: Long, x: Float, y: Float, width: Float, height: Float)
+
+    init {
+        updateSleeping()
+    }
+
     override fun onAttach(entity: Entity) {
         super.onAttach(entity)
         setEntityTexture(entity.nativePointer, nativePointer.get())
+        updateAtlasRegion()
     }
 
     override fun onDetach(entity: Entity) {
         super.onDetach(entity)
         removeEntityTexture(entity.nativePointer, nativePointer.get())
+        updateAtlasRegion()
+    }
+
+    override fun dispose() {
+        super.dispose()
+
+        // Wait for rasterization into surface which is being released
+        asyncJob?.cancel()
+        asyncJob = null
+
+        // Also releases shared texture of atlas
+        nativePointer.release()
     }
 
     override fun update(frame: FrameInput) {
 
         val renderer = this.canvasRenderer
-        if (renderer != null) {
+        val atlasRegion = this.atlasRegion
+        val bitmap = pendingBitmap
+        if (bitmap != null) {
+            upload(bitmap)
+        } else if (atlasRegion != null) {
+
+            // Drawn by SurfaceAtlas
+            if (atlasRegion.renderer.isDirty) {
+                atlasRegion.renderer.collectDirtyRect(dirtyRect)
+                atlas?.invalidate(atlasRegion, dirtyRect)
+            }
+        } else if (renderer != null && hasSurface) {
 
-            if (renderer.isDirty) {
-                val surface = getSurface(nativePointer.get())
-                val canvas = surface.lockCanvas(null)
+            if (hardwareFramePending && !continuousUpdate && availableFrames.getAndSet(0) > 0) {
+                surfaceTexture.updateTexImage()
+                onHardwareFrameLatched(renderer)
+            }
 
-                // One time draw if return true
-                if (renderer.render(canvas)) {
-                    renderer.isDirty = false
+            val job = asyncJob
+            if (job != null) {
+                if (job.isDone) {
+                    asyncJob = null
+                    finishAsync(job)
+                }
+            } else if (renderer.isDirty && !hardwareFramePending) {
+                val hardware = isHardwareCanvas
+                if (isAsync) {
+                    renderAsync(renderer, hardware)
+                } else {
+                    val start = System.nanoTime()
+                    if (!hardware) renderer.collectDirtyRect(dirtyRect)
+
+                    // One time draw if return true
+                    renderer.onRendered(rasterize(getSurface(nativePointer.get()), renderer, hardware, dirtyRect))
+
+                    onPosted(renderer, hardware, dirtyRect, start, System.nanoTime())
                 }
+            }
+        }
 
-                surface.unlockCanvasAndPost(canvas)
+        // Continuous update texture only if new frame has arrived
+        if (continuousUpdate && hasSurface) {
+            val pacer = videoFramePacer
+            val latched = if (pacer != null) {
+                updatePacedTexImage(pacer, frame)
+            } else {
+                val frames = availableFrames.getAndSet(0)
+                if (frames > 0) {
+                    surfaceTexture.updateTexImage()
+                    latchedFrames++
+                    droppedFrames += frames - 1
+                }
+                frames > 0
+            }
 
-                // One time update texture
-                if (!continuousUpdate) surfaceTexture.updateTexImage()
+            // Hardware canvas is the only producer of its surface
+            if (latched && hardwareFramePending) {
+                canvasRenderer?.let { onHardwareFrameLatched(it) }
             }
         }
 
-        // Continuous update texture
-        if (continuousUpdate) {
+        super.update(frame)
+    }
+
+    /**
+     * Latch newest frame when its presentation time is due by predicted display time.
+     *
+     * @return `true` if new frame is latched.
+     */
+    private fun updatePacedTexImage(pacer: VideoFramePacer, frame: FrameInput): Boolean {
+
+        val target = (frame.predictedDisplayTimeInSeconds * 1e9).toLong()
+        val arrived = availableFrames.get()
+        val latch = pacer.shouldLatch(arrived, target)
+
+        val surfaceTexture = surfaceTexture
+        if (latch) {
             surfaceTexture.updateTexImage()
+            availableFrames.addAndGet(-arrived)
+            latchedFrames++
+            droppedFrames += arrived - 1
         }
+        pacer.onDisplayed(arrived, latch, surfaceTexture.timestamp, target)
+        return latch
+    }
 
-        super.update(frame)
+    /**
+     * Hardware canvas frame has been latched. Render time is measured until frame became available.
+     */
+    private fun onHardwareFrameLatched(renderer: CanvasRenderer) {
+        hardwareFramePending = false
+        renderer.recordRenderTime(System.nanoTime() - hardwareRenderStart)
+        updateSleeping()
+    }
+
+    /**
+     * Listen frames only while posted by producer or hardware canvas.
+     */
+    private fun listenFrames() {
+        if (!hasSurface) return
+
+        val listen = continuousUpdate || isHardwareCanvas
+        if (listen != isListeningFrames) {
+            val listener = if (listen) SurfaceTexture.OnFrameAvailableListener { onFrameAvailable(it) } else null
+            surfaceTexture.setOnFrameAvailableListener(listener)
+            isListeningFrames = listen
+        }
+
+        // Producer frames are not latched anymore
+        if (!continuousUpdate && !hardwareFramePending) {
+            availableFrames.set(0)
+        }
+    }
+
+    // Called from listener thread
+    private fun onFrameAvailable(surfaceTexture: SurfaceTexture) {
+        if (continuousUpdate) producedFrames++
+        availableFrames.incrementAndGet()
+        onFrameAvailableListener?.onFrameAvailable(surfaceTexture)
+    }
+
+    private fun renderAsync(renderer: CanvasRenderer, hardware: Boolean) {
+
+        val job = AsyncRasterization(getSurface(nativePointer.get()), renderer, hardware)
+        if (!hardware) renderer.collectDirtyRect(job.dirty)
+
+        // Invalidations while rasterizing are kept for next rendering
+        renderer.onRendered(true)
+
+        if (CanvasRasterizer.trySubmit(job)) {
+            asyncJob = job
+        } else {
+            // Too many in flight. Retry in next update.
+            if (hardware) renderer.invalidate() else renderer.invalidate(job.dirty)
+        }
+    }
+
+    private fun finishAsync(job: AsyncRasterization) {
+
+        job.error?.let { throw it }
+
+        // Continuous drawing
+        if (!job.finished) job.renderer.invalidate()
+
+        onPosted(job.renderer, job.hardware, job.dirty, job.start, job.end)
+    }
+
+    /**
+     * One time update texture.
+     *
+     * @param start Start time of rendering in [System.nanoTime].
+     * @param end   Time when canvas was posted in [System.nanoTime].
+     */
+    private fun onPosted(renderer: CanvasRenderer, hardware: Boolean, dirty: Rect, start: Long, end: Long) {
+
+        FrameStats.addCanvasRedraw(dirty, renderer.width, renderer.height)
+
+        if (hardware) {
+            // Latched and timed when RenderThread has queued the frame
+            hardwareFramePending = true
+            hardwareRenderStart = start
+        } else {
+            renderer.recordRenderTime(end - start)
+            if (!continuousUpdate) surfaceTexture.updateTexImage()
+        }
+    }
+
+    /**
+     * Upload static image with mipmaps. CPU copy is not retained.
+     */
+    private fun upload(bitmap: Bitmap) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTextureId(nativePointer.get()))
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0)
+        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D)
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0)
+        setTextureSize(nativePointer.get(), bitmap.width, bitmap.height)
+
+        if (recycleBitmap) bitmap.recycle()
+        pendingBitmap = null
+        updateSleeping()
+    }
+
+    internal fun setBufferSize(width: Int, height: Int) {
+        surfaceTexture.setDefaultBufferSize(width, height)
+        setTextureSize(nativePointer.get(), width, height)
+    }
+
+    /**
+     * Allocate region of [atlas] for [canvasRenderer] while attached. Free it otherwise.
+     */
+    private fun updateAtlasRegion() {
+        val atlas = atlas ?: return
+
+        atlasRegion?.let { atlas.free(it) }
+        atlasRegion = null
+
+        val renderer = canvasRenderer ?: return
+        if (!isAttached) return
+
+        val region = atlas.allocate(this, renderer)
+        setTextureRegion(nativePointer.get(), region.u, region.v, region.uWidth, region.vHeight)
+        atlasRegion = region
+    }
+
+    // Nothing to do in update without canvas or continuous update
+    private fun updateSleeping() {
+        isSleeping = canvasRenderer == null && !continuousUpdate && pendingBitmap == null && !hardwareFramePending
     }
 
     fun setChromaKeyColor(r: Float, g: Float, b: Float) {
         setChromaKeyColor(nativePointer.get(), r, g, b)
     }
 
+    /**
+     * Rasterization of [renderer] on worker thread.
+     */
+    private class AsyncRasterization(private val surface: Surface, val renderer: CanvasRenderer,
+                                     val hardware: Boolean) : Runnable {
+
+        val dirty = Rect()
+        var finished = false
+        var start = 0L
+        var end = 0L
+        var error: Throwable? = null
+
+        private var isCancelled = false
+
+        @Volatile
+        var isDone = false
+            private set
+
+        override fun run() {
+            synchronized(this) {
+                if (isCancelled) return
+
+                start = System.nanoTime()
+                try {
+                    finished = rasterize(surface, renderer, hardware, dirty)
+                } catch (e: Throwable) {
+                    error = e
+                }
+                end = System.nanoTime()
+            }
+            isDone = true
+        }
+
+        /**
+         * Wait for running rasterization and prevent it from starting.
+         */
+        fun cancel() {
+            synchronized(this) {
+                isCancelled = true
+            }
+        }
+    }
+
     enum class StereoMode {
         NORMAL, // 0
         TOP_BOTTOM, // 1
@@ -159,15 +596,100 @@ class SurfaceRendererComponent : Component() {
         open var isDirty = true
 
         /**
+         * Time in microseconds spent for last rendering including locking and posting canvas.
+         * With hardware canvas, this is measured until RenderThread makes the frame available to texture.
+         */
+        var lastRenderMicros = 0L
+            private set
+
+        /**
+         * Exponential moving average of [lastRenderMicros].
+         */
+        var averageRenderMicros = 0f
+            private set
+
+        /**
+         * Number of renderings.
+         */
+        var renderCount = 0
+            private set
+
+        internal fun recordRenderTime(nanos: Long) {
+            lastRenderMicros = nanos / 1000
+            averageRenderMicros = if (renderCount == 0) {
+                lastRenderMicros.toFloat()
+            } else {
+                averageRenderMicros + (lastRenderMicros - averageRenderMicros) * 0.1f
+            }
+            renderCount++
+        }
+
+        // Redraw whole surface if true. Otherwise only dirtyRect.
+        private var isFullyDirty = true
+        private val dirtyRect = Rect()
+
+        /**
+         * Canvas is clipped to dirty region. Content outside of clip is kept.
+         *
          * @param canvas Canvas to draw.
          * @return `true` to end drawing. No more called in next update. If redrawing is required, call [.invalidate].
          * `false` to continues draw. This behavior can be modified overriding [.isDirty].
          */
         abstract fun render(canvas: Canvas): Boolean
 
+        /**
+         * Request redrawing whole surface.
+         */
         fun invalidate() {
+            isFullyDirty = true
+            isDirty = true
+        }
+
+        /**
+         * Request redrawing only [rect]. Rects are united until next rendering.
+         *
+         * @param rect Dirty rect in surface coordinates.
+         */
+        fun invalidate(rect: Rect) {
+            dirtyRect.union(rect)
             isDirty = true
         }
+
+        /**
+         * Get region which should be redrawn in next rendering.
+         *
+         * @param out Union of dirty rects. Whole surface if none is known.
+         */
+        internal open fun collectDirtyRect(out: Rect) {
+            if (isFullyDirty) {
+                out.set(0, 0, width, height)
+                return
+            }
+
+            out.set(dirtyRect)
+            addDirtyRect(out)
+
+            // Marked as dirty without rect
+            if (!out.intersect(0, 0, width, height)) {
+                out.set(0, 0, width, height)
+            }
+        }
+
+        /**
+         * Add dirty region tracked by subclass.
+         *
+         * @param out Union of dirty rects.
+         */
+        internal open fun addDirtyRect(out: Rect) {
+        }
+
+        internal fun onRendered(finished: Boolean) {
+            dirtyRect.setEmpty()
+
+            // Continuous drawing redraws whole surface every time
+            isFullyDirty = !finished
+            if (finished) isDirty = false
+        }
     }
 
     class DrawableRenderer(private val drawable: Drawable) : CanvasRenderer(drawable.intrinsicWidth, drawable.intrinsicHeight) {
@@ -180,18 +702,128 @@ class SurfaceRendererComponent : Component() {
 
     class ViewRenderer(val view: View, width: Int, height: Int) : CanvasRenderer(width, height) {
 
+        private val hitRect = Rect()
+
+        // Surface bounds of Views when they were last redrawn as dirty
+        private val lastBounds = WeakHashMap<View, Rect>()
+
+        // Set from any thread by event-driven invalidation
+        private val changed = AtomicBoolean(false)
+
+        /**
+         * `true` if changes are notified by [Root] or [requestRedraw] instead of polling dirty state of
+         * all Views in every frame. Create with [from] `(view, true)` to enable this.
+         */
+        var isEventDriven = false
+            private set
+
         override var isDirty: Boolean
-            get() = isDirty(view)
+            get() {
+                if (changed.getAndSet(false)) invalidate()
+                return super.isDirty || (!isEventDriven && isDirty(view))
+            }
             set(value) {
                 super.isDirty = value
             }
 
+        /**
+         * Request redrawing whole surface. Can be called from any thread.
+         * Call this after changes which don't request layout if [isEventDriven].
+         */
+        fun requestRedraw() {
+            changed.set(true)
+        }
+
+        // Previous and current bounds of dirty Views
+        override fun addDirtyRect(out: Rect) {
+
+            // Layout in render may move, resize or remove any View
+            if (isEventDriven && view.isLayoutRequested) {
+                out.set(0, 0, width, height)
+                return
+            }
+
+            if (!addDirtyViews(view, 0, 0, out)) {
+                out.set(0, 0, width, height)
+            }
+        }
+
+        /**
+         * Add previous and current bounds of dirty Views in hierarchy, so that area left by moved,
+         * shrunk or hidden View is also redrawn. Children of dirty View are not visited.
+         *
+         * @param view Visited View.
+         * @param left Left of parent in surface coordinates.
+         * @param top  Top of parent in surface coordinates.
+         * @param out  Union of dirty rects.
+         * @return `false` if previous bounds of some dirty View are unknown. Whole surface must be redrawn.
+         */
+        private fun addDirtyViews(view: View, left: Int, top: Int, out: Rect): Boolean {
+
+            if (view.isDirty) {
+                // Hit rect includes transformation
+                view.getHitRect(hitRect)
+                hitRect.offset(left, top)
+                out.union(hitRect)
+
+                val previous = lastBounds[view]
+                if (previous == null) {
+                    lastBounds[view] = Rect(hitRect)
+                    return false
+                }
+                out.union(previous)
+                previous.set(hitRect)
+                return true
+            }
+
+            var known = true
+            if (view is ViewGroup) {
+                val childLeft = left + view.left - view.scrollX
+                val childTop = top + view.top - view.scrollY
+                for (i in 0 until view.childCount) {
+                    known = addDirtyViews(view.getChildAt(i), childLeft, childTop, out) && known
+                }
+            }
+            return known
+        }
+
         override fun render(canvas: Canvas): Boolean {
+
+            // Detached View is not laid out automatically. Root can't be notified again until it is laid out.
+            if (isEventDriven && view.isLayoutRequested) {
+                view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY))
+                view.layout(0, 0, width, height)
+            }
+
             canvas.drawColor(0, PorterDuff.Mode.CLEAR)
             view.draw(canvas)
             return true
         }
 
+        /**
+         * Root layout which notifies [ViewRenderer] of changes in its hierarchy.
+         * Views of panel are not attached to window, so `invalidate()` is not propagated to parents.
+         * `requestLayout()` of descendants and `invalidate()` of this are notified.
+         * Other changes must be notified with [requestRedraw].
+         */
+        class Root(context: Context) : FrameLayout(context) {
+
+            internal var renderer: ViewRenderer? = null
+
+            override fun requestLayout() {
+                super.requestLayout()
+
+                // Called in super constructor before renderer is set
+                renderer?.requestRedraw()
+            }
+
+            override fun invalidate() {
+                super.invalidate()
+                renderer?.requestRedraw()
+            }
+        }
+
         companion object {
 
             fun from(view: View): ViewRenderer {
@@ -202,6 +834,30 @@ class SurfaceRendererComponent : Component() {
                 return ViewRenderer(view, width, height)
             }
 
+            /**
+             * Create ViewRenderer.
+             * If [eventDriven] is `true`, [view] is wrapped by [Root] and checking dirty state costs O(1)
+             * instead of traversing hierarchy in every frame.
+             *
+             * @param view        View which has no parent.
+             * @param eventDriven Use event-driven invalidation.
+             * @return new instance
+             */
+            fun from(view: View, eventDriven: Boolean): ViewRenderer {
+
+                if (!eventDriven) return from(view)
+
+                require(view.parent == null) { "View must not have parent." }
+
+                val root = Root(view.context)
+                root.addView(view)
+
+                return from(root).also {
+                    it.isEventDriven = true
+                    root.renderer = it
+                }
+            }
+
             /**
              * Check dirty state of view recursively.
              *
@@ -226,6 +882,30 @@ class SurfaceRendererComponent : Component() {
 
     companion object {
 
+        /**
+         * Lock canvas, render and post.
+         *
+         * @param dirty Union of dirty rects. Set to whole surface for hardware canvas. Updated to actually redrawn rect.
+         * @return Result of [CanvasRenderer.render].
+         */
+        private fun rasterize(surface: Surface, renderer: CanvasRenderer, hardware: Boolean, dirty: Rect): Boolean {
+
+            // Hardware canvas doesn't keep previous content. Redraw whole surface.
+            val canvas = if (hardware) {
+                dirty.set(0, 0, renderer.width, renderer.height)
+                surface.lockHardwareCanvas()
+            } else {
+                // Only union of dirty rects is redrawn. Surface may expand it.
+                surface.lockCanvas(dirty)
+            }
+
+            try {
+                return renderer.render(canvas)
+            } finally {
+                surface.unlockCanvasAndPost(canvas)
+            }
+        }
+
         @JvmStatic
         fun from(view: View): SurfaceRendererComponent {
 
@@ -239,6 +919,20 @@ class SurfaceRendererComponent : Component() {
             }
         }
 
+        /**
+         * Create SurfaceRendererComponent from [view].
+         *
+         * @param view        View
+         * @param eventDriven Redraw only when changes are notified. See [ViewRenderer.Root].
+         * @return new instance
+         */
+        @JvmStatic
+        fun from(view: View, eventDriven: Boolean): SurfaceRendererComponent {
+            return SurfaceRendererComponent().apply {
+                canvasRenderer = ViewRenderer.from(view, eventDriven)
+            }
+        }
+
         @JvmStatic
         fun from(drawable: Drawable): SurfaceRendererComponent {
 
@@ -248,5 +942,74 @@ class SurfaceRendererComponent : Component() {
                 canvasRenderer = DrawableRenderer(drawable)
             }
         }
+
+        /**
+         * Create SurfaceRendererComponent which renders static [bitmap].
+         * Bitmap is uploaded into mipmapped texture once and not referenced after that.
+         *
+         * @param bitmap Bitmap
+         * @return new instance
+         */
+        @JvmStatic
+        fun from(bitmap: Bitmap): SurfaceRendererComponent {
+            return SurfaceRendererComponent(bitmap, false)
+        }
+
+        /**
+         * Create SurfaceRendererComponent which renders [drawable] as static image.
+         * Use this instead of [from] for images which never change.
+         *
+         * @param drawable Drawable
+         * @return new instance
+         */
+        @JvmStatic
+        fun fromStatic(drawable: Drawable): SurfaceRendererComponent {
+
+            // Bitmap of BitmapDrawable may be shared by other drawables
+            if (drawable is BitmapDrawable && drawable.bitmap != null) {
+                return SurfaceRendererComponent(drawable.bitmap, false)
+            }
+
+            val width = drawable.intrinsicWidth
+            val height = drawable.intrinsicHeight
+            require(width > 0 && height > 0) { "Drawable must have intrinsic size." }
+
+            val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+            drawable.setBounds(0, 0, width, height)
+            drawable.draw(Canvas(bitmap))
+
+            return SurfaceRendererComponent(bitmap, true)
+        }
+
+        /**
+         * Create SurfaceRendererComponent which renders [drawable] into shared [atlas].
+         *
+         * @param drawable Drawable
+         * @param atlas    Shared surface.
+         * @return new instance
+         */
+        @JvmStatic
+        fun from(drawable: Drawable, atlas: SurfaceAtlas): SurfaceRendererComponent {
+
+            drawable.setBounds(0, 0, drawable.intrinsicWidth, drawable.intrinsicHeight)
+
+            return SurfaceRendererComponent(atlas).apply {
+                canvasRenderer = DrawableRenderer(drawable)
+            }
+        }
+
+        /**
+         * Create SurfaceRendererComponent which renders [view] into shared [atlas].
+         *
+         * @param view  View
+         * @param atlas Shared surface.
+         * @return new instance
+         */
+        @JvmStatic
+        fun from(view: View, atlas: SurfaceAtlas): SurfaceRendererComponent {
+            return SurfaceRendererComponent(atlas).apply {
+                canvasRenderer = ViewRenderer.from(view)
+            }
+        }
     }
 }
@@ -0,0 +1,154 @@
+package org.meganekkovr
+
+import java.util.Collections
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Flat list of [Component]s and [Entity]s which have to be updated every frame in a [Scene].
+ * Only instances whose class overrides `update` are listed, so Components without
+ * update logic like [GeometryComponent] cost nothing per frame.
+ * Disabled or sleeping Components are removed from the list until they become active again.
+ *
+ * Update order is:
+ * 1. Entities in depth order. Parent is updated before its children.
+ * 2. Components in unspecified order. Order changes when components are added, removed or woken up.
+ *
+ * Kept up to date by [Entity.add] and [Entity.remove] like [EntityIndex].
+ */
+internal class TickList {
+
+    private val components = ArrayList<Component>()
+    private val entities = ArrayList<Entity>()
+    private var entitiesSorted = true
+
+    // Entities whose opacity has been changed. Opacity may be set from UI thread by animators.
+    private val opacityChanged = ConcurrentLinkedQueue<Entity>()
+
+    // Reused to iterate while list can be modified by update
+    private var componentBuffer = arrayOfNulls<Component>(16)
+    private var entityBuffer = arrayOfNulls<Entity>(16)
+
+    /**
+     * Register [entity], its components and all its descendants.
+     */
+    fun addSubtree(entity: Entity) {
+        add(entity)
+        entity.forEachComponent { add(it) }
+        if (entity.isOpacityChanged) {
+            opacityChanged.add(entity)
+        }
+        entity.children.forEach { child -> addSubtree(child) }
+    }
+
+    /**
+     * Unregister [entity], its components and all its descendants.
+     */
+    fun removeSubtree(entity: Entity) {
+        remove(entity)
+        entity.forEachComponent { remove(it) }
+        entity.children.forEach { child -> removeSubtree(child) }
+    }
+
+    fun add(entity: Entity) {
+        // Scene is updated by MeganekkoApp
+        if (entity is Scene || entity.isTicking) return
+
+        if (UpdateOverrides.of(entity.javaClass, Entity::class.java)) {
+            entity.isTicking = true
+            entities.add(entity)
+            entitiesSorted = false
+        }
+    }
+
+    fun remove(entity: Entity) {
+        if (!entity.isTicking) return
+        entity.isTicking = false
+        entities.remove(entity)
+    }
+
+    fun add(component: Component) {
+        if (component.tickIndex >= 0 || !component.isActive) return
+
+        if (UpdateOverrides.of(component.javaClass, Component::class.java)) {
+            component.tickIndex = components.size
+            components.add(component)
+        }
+    }
+
+    fun remove(component: Component) {
+        val index = component.tickIndex
+        if (index < 0) return
+
+        // Swap with last one
+        val last = components.removeAt(components.size - 1)
+        if (last !== component) {
+            components[index] = last
+            last.tickIndex = index
+        }
+        component.tickIndex = -1
+    }
+
+    /**
+     * Called when opacity of [entity] is changed. It will be applied in next [updateOpacity].
+     * Can be called from any thread.
+     */
+    fun requestOpacityUpdate(entity: Entity) {
+        opacityChanged.add(entity)
+    }
+
+    fun update(frame: FrameInput) {
+
+        // Stable sort keeps order of addition among same depth
+        if (!entitiesSorted) {
+            Collections.sort(entities, byDepth)
+            entitiesSorted = true
+        }
+
+        // Entities overriding update
+        val entityCount = entities.size
+        if (entityBuffer.size < entityCount) {
+            entityBuffer = arrayOfNulls(entityCount * 2)
+        }
+        val entityBuffer = entities.toArray(entityBuffer)
+        for (i in 0 until entityCount) {
+            val entity = entityBuffer[i]!!
+            entityBuffer[i] = null
+
+            // Removed by previous update
+            if (!entity.isTicking) continue
+
+            entity.update(frame)
+        }
+
+        // Components overriding update
+        val componentCount = components.size
+        if (componentBuffer.size < componentCount) {
+            componentBuffer = arrayOfNulls(componentCount * 2)
+        }
+        val componentBuffer = components.toArray(componentBuffer)
+        for (i in 0 until componentCount) {
+            val component = componentBuffer[i]!!
+            componentBuffer[i] = null
+
+            // Removed, disabled or updated by ComponentSystem
+            if (component.tickIndex < 0 || component.poolIndex >= 0) continue
+
+            component.update(frame)
+        }
+    }
+
+    /**
+     * Apply opacity changes. Called after all updates.
+     */
+    fun updateOpacity() {
+        // Changes queued while applying are applied in next frame
+        for (i in 0 until opacityChanged.size) {
+            val entity = opacityChanged.poll() ?: break
+            entity.resolveOpacity()
+        }
+    }
+
+    companion object {
+        private val byDepth = Comparator<Entity> { a, b -> a.depth - b.depth }
+    }
+}
@@ -0,0 +1,138 @@
+package org.meganekkovr
+
+import java.util.Collections
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Resolves [Entity] transforms once per frame.
+ * Entities whose transform has changed are recorded as dirty roots.
+ * [flush] resolves them parent-first in depth order, so cost is proportional to
+ * the number of changed subtrees instead of scene size, and children always use
+ * their parent's matrix of the same frame.
+ *
+ * Local matrices of dirty roots are computed under lock of [TransformStore]. World matrices
+ * are computed and queued for native upload after lock is released, so setters on other
+ * threads do not wait for the walk. Changes made meanwhile are resolved in next frame.
+ *
+ * Optionally, dirty subtrees larger than [parallelThreshold] are computed across cores
+ * with a fork-join pool. Results are joined before native upload.
+ */
+internal object TransformScheduler {
+
+    // ParallelTransformBenchmark finds crossover around 1024 nodes. Twice of it not to lose on noisy devices.
+    private const val DEFAULT_PARALLEL_THRESHOLD = 2048
+
+    private val byDepth = Comparator<Entity> { a, b -> a.depth - b.depth }
+
+    private var pending = ArrayList<Entity>()
+    private var resolving = ArrayList<Entity>()
+
+    private var pool: ForkJoinPool? = null
+
+    /**
+     * Enable parallel transform pass.
+     */
+    @Volatile
+    var parallelEnabled = false
+
+    /**
+     * Minimum subtree size to be computed in parallel.
+     * Default is derived from `ParallelTransformBenchmark` in unit tests.
+     */
+    @Volatile
+    var parallelThreshold = DEFAULT_PARALLEL_THRESHOLD
+        set(parallelThreshold) {
+            require(parallelThreshold > 0) { "parallelThreshold must be positive." }
+            field = parallelThreshold
+        }
+
+    /**
+     * Record dirty root. Can be called from any thread.
+     *
+     * @param entity Entity whose local matrix or parent has changed.
+     */
+    @Synchronized
+    fun enqueue(entity: Entity) {
+        pending.add(entity)
+    }
+
+    /**
+     * Called from [org.meganekkovr.GearVRActivity.update].
+     * Resolve all dirty roots.
+     */
+    fun flush() {
+
+        val roots = synchronized(this) {
+            val roots = pending
+            pending = resolving
+            resolving = roots
+            roots
+        }
+
+        FrameStats.parallelTransformSubtrees = 0
+
+        if (roots.isEmpty()) return
+
+        if (roots.size > 1) {
+            Collections.sort(roots, byDepth)
+        }
+
+        val parallel = parallelEnabled
+        val threshold = parallelThreshold
+
+        // Position, rotation and scale are written by setters from any thread.
+        // Only dirty roots have changed them, so their local matrices are computed under lock.
+        synchronized(TransformStore) {
+            for (i in 0 until roots.size) {
+                val root = roots[i]
+                if (root.transformQueued) root.updateLocalMatrix()
+            }
+            TransformStore.beginResolve()
+        }
+
+        // World matrices depend only on local matrices. Setters are not blocked while walking.
+        try {
+            for (i in 0 until roots.size) {
+                val root = roots[i]
+
+                // Already resolved as a descendant of other root
+                if (!root.transformQueued) continue
+
+                if (parallel && root.subtreeSize >= threshold) {
+                    resolveParallel(root, threshold)
+                } else {
+                    root.resolveTransform()
+                }
+            }
+        } finally {
+            TransformStore.endResolve()
+        }
+
+        roots.clear()
+    }
+
+    private fun resolveParallel(root: Entity, threshold: Int) {
+        val pool = pool ?: ForkJoinPool(Runtime.getRuntime().availableProcessors()).also { pool = it }
+
+        EntityTransformWalk.walkParallel(pool, root, threshold)
+
+        // Native upload is not thread safe.
+        root.uploadTransform()
+
+        FrameStats.parallelTransformSubtrees++
+    }
+
+    /**
+     * Computes transforms of subtree without native upload.
+     */
+    private object EntityTransformWalk : ParallelTreeWalk<Entity>() {
+
+        override fun childCount(node: Entity) = node.children.size
+
+        override fun child(node: Entity, index: Int) = node.children[index]
+
+        override fun subtreeSize(node: Entity) = node.subtreeSize
+
+        override fun visit(node: Entity) = node.updateTransform()
+    }
+}
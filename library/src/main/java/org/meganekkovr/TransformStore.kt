@@ -0,0 +1,310 @@
+package org.meganekkovr
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+
+/**
+ * Structure-of-arrays storage for [Entity] transforms.
+ * Every [Entity] owns one slot. Local position, rotation, scale, local matrix and
+ * world model matrix of all Entities are packed into contiguous primitive arrays
+ * indexed by that slot. Matrices are stored in column-major order, same as JOML.
+ *
+ * Arrays are replaced when storage grows. Setters may be called from any thread, so they
+ * and readers of the arrays must hold lock of this object. [updateLocalMatrix] is called
+ * only while [TransformScheduler.flush] holds it. [updateWorldMatrix] is called between
+ * [beginResolve] and [endResolve] without lock, so storage does not grow meanwhile.
+ *
+ * Slots of garbage collected owners are reclaimed by [gc].
+ */
+internal object TransformStore {
+
+    private const val INITIAL_CAPACITY = 256
+
+    const val POSITION_STRIDE = 3
+    const val ROTATION_STRIDE = 4
+    const val SCALE_STRIDE = 3
+    const val MATRIX_STRIDE = 16
+
+    private val referenceQueue = ReferenceQueue<Any>()
+
+    private var capacity = INITIAL_CAPACITY
+    private var size = 0
+    private var freeSlots = IntArray(INITIAL_CAPACITY)
+    private var freeSlotCount = 0
+    private var references = arrayOfNulls<SlotReference>(INITIAL_CAPACITY)
+    private var resolving = false
+
+    var positions = FloatArray(INITIAL_CAPACITY * POSITION_STRIDE)
+        private set
+    var rotations = FloatArray(INITIAL_CAPACITY * ROTATION_STRIDE)
+        private set
+    var scales = FloatArray(INITIAL_CAPACITY * SCALE_STRIDE)
+        private set
+    var localMatrices = FloatArray(INITIAL_CAPACITY * MATRIX_STRIDE)
+        private set
+    var worldMatrices = FloatArray(INITIAL_CAPACITY * MATRIX_STRIDE)
+        private set
+
+    /**
+     * Number of slots currently in use.
+     */
+    val liveCount: Int
+        @Synchronized get() = size - freeSlotCount
+
+    /**
+     * Allocate slot for [owner] and initialize it with identity transform.
+     *
+     * @param owner Owner of slot. Usually [Entity].
+     * @return Slot index.
+     */
+    @Synchronized
+    fun allocate(owner: Any): Int {
+
+        // World matrices are being computed without lock. Wait instead of replacing arrays.
+        while (freeSlotCount == 0 && size == capacity && resolving) {
+            (this as Object).wait()
+        }
+
+        val slot = if (freeSlotCount > 0) {
+            freeSlots[--freeSlotCount]
+        } else {
+            if (size == capacity) grow()
+            size++
+        }
+
+        references[slot] = SlotReference(owner, slot, referenceQueue)
+        reset(slot)
+        return slot
+    }
+
+    /**
+     * Called from [TransformScheduler.flush] before it releases lock to compute world
+     * model matrices. Until [endResolve], storage does not grow and arrays are not replaced.
+     */
+    @Synchronized
+    fun beginResolve() {
+        resolving = true
+    }
+
+    /**
+     * Called from [TransformScheduler.flush] after world model matrices are computed.
+     */
+    @Synchronized
+    fun endResolve() {
+        resolving = false
+        (this as Object).notifyAll()
+    }
+
+    /**
+     * Release slot. Released slot may be reused by another [Entity].
+     *
+     * @param slot Slot index.
+     */
+    @Synchronized
+    fun release(slot: Int) {
+        val ref = references[slot] ?: return
+        ref.clear()
+        references[slot] = null
+        freeSlots[freeSlotCount++] = slot
+    }
+
+    /**
+     * Called from [org.meganekkovr.GearVRActivity.update].
+     * Reclaim slots of garbage collected Entities.
+     */
+    @JvmStatic
+    fun gc() {
+        while (true) {
+            val ref = referenceQueue.poll() as? SlotReference ?: break
+            synchronized(this) {
+                // Slot may be already released and reused.
+                if (references[ref.slot] === ref) {
+                    references[ref.slot] = null
+                    freeSlots[freeSlotCount++] = ref.slot
+                }
+            }
+        }
+    }
+
+    @Synchronized
+    fun setPosition(slot: Int, x: Float, y: Float, z: Float) {
+        val i = slot * POSITION_STRIDE
+        val positions = positions
+        positions[i] = x
+        positions[i + 1] = y
+        positions[i + 2] = z
+    }
+
+    /**
+     * Set one component of position.
+     *
+     * @param slot  Slot index.
+     * @param index `0` for x, `1` for y, `2` for z.
+     * @param value New value.
+     */
+    @Synchronized
+    fun setPosition(slot: Int, index: Int, value: Float) {
+        positions[slot * POSITION_STRIDE + index] = value
+    }
+
+    @Synchronized
+    fun setRotation(slot: Int, x: Float, y: Float, z: Float, w: Float) {
+        val i = slot * ROTATION_STRIDE
+        val rotations = rotations
+        rotations[i] = x
+        rotations[i + 1] = y
+        rotations[i + 2] = z
+        rotations[i + 3] = w
+    }
+
+    @Synchronized
+    fun setScale(slot: Int, x: Float, y: Float, z: Float) {
+        val i = slot * SCALE_STRIDE
+        val scales = scales
+        scales[i] = x
+        scales[i + 1] = y
+        scales[i + 2] = z
+    }
+
+    /**
+     * Set one component of scale.
+     *
+     * @param slot  Slot index.
+     * @param index `0` for x, `1` for y, `2` for z.
+     * @param value New value.
+     */
+    @Synchronized
+    fun setScale(slot: Int, index: Int, value: Float) {
+        scales[slot * SCALE_STRIDE + index] = value
+    }
+
+    /**
+     * Compute local matrix from position, rotation and scale.
+     * Result is same as `identity().translate(position).rotate(rotation).scale(scale)`.
+     *
+     * @param slot Slot index.
+     */
+    fun updateLocalMatrix(slot: Int) {
+        val p = slot * POSITION_STRIDE
+        val r = slot * ROTATION_STRIDE
+        val s = slot * SCALE_STRIDE
+        val m = slot * MATRIX_STRIDE
+        val positions = positions
+        val rotations = rotations
+        val scales = scales
+        val local = localMatrices
+
+        val x = rotations[r]
+        val y = rotations[r + 1]
+        val z = rotations[r + 2]
+        val w = rotations[r + 3]
+        val w2 = w * w
+        val x2 = x * x
+        val y2 = y * y
+        val z2 = z * z
+        val xy = x * y
+        val xz = x * z
+        val yz = y * z
+        val xw = x * w
+        val yw = y * w
+        val zw = z * w
+
+        val sx = scales[s]
+        val sy = scales[s + 1]
+        val sz = scales[s + 2]
+
+        local[m] = (w2 + x2 - z2 - y2) * sx
+        local[m + 1] = (xy + zw + zw + xy) * sx
+        local[m + 2] = (xz - yw + xz - yw) * sx
+        local[m + 3] = 0f
+        local[m + 4] = (-zw + xy - zw + xy) * sy
+        local[m + 5] = (y2 - z2 + w2 - x2) * sy
+        local[m + 6] = (yz + yz + xw + xw) * sy
+        local[m + 7] = 0f
+        local[m + 8] = (yw + xz + xz + yw) * sz
+        local[m + 9] = (yz + yz - xw - xw) * sz
+        local[m + 10] = (z2 - y2 - x2 + w2) * sz
+        local[m + 11] = 0f
+        local[m + 12] = positions[p]
+        local[m + 13] = positions[p + 1]
+        local[m + 14] = positions[p + 2]
+        local[m + 15] = 1f
+    }
+
+    /**
+     * Compute world model matrix. `world = parentWorld * local`.
+     * Both matrices are affine because local matrices are always built from TRS.
+     *
+     * @param slot       Slot index.
+     * @param parentSlot Slot index of parent or `-1` for root.
+     */
+    fun updateWorldMatrix(slot: Int, parentSlot: Int) {
+        val m = slot * MATRIX_STRIDE
+        val local = localMatrices
+        val world = worldMatrices
+
+        if (parentSlot < 0) {
+            System.arraycopy(local, m, world, m, MATRIX_STRIDE)
+            return
+        }
+
+        val p = parentSlot * MATRIX_STRIDE
+        val p00 = world[p]
+        val p01 = world[p + 1]
+        val p02 = world[p + 2]
+        val p10 = world[p + 4]
+        val p11 = world[p + 5]
+        val p12 = world[p + 6]
+        val p20 = world[p + 8]
+        val p21 = world[p + 9]
+        val p22 = world[p + 10]
+        val p30 = world[p + 12]
+        val p31 = world[p + 13]
+        val p32 = world[p + 14]
+
+        for (col in 0..2) {
+            val c = m + col * 4
+            val l0 = local[c]
+            val l1 = local[c + 1]
+            val l2 = local[c + 2]
+            world[c] = p00 * l0 + p10 * l1 + p20 * l2
+            world[c + 1] = p01 * l0 + p11 * l1 + p21 * l2
+            world[c + 2] = p02 * l0 + p12 * l1 + p22 * l2
+            world[c + 3] = 0f
+        }
+
+        val l0 = local[m + 12]
+        val l1 = local[m + 13]
+        val l2 = local[m + 14]
+        world[m + 12] = p00 * l0 + p10 * l1 + p20 * l2 + p30
+        world[m + 13] = p01 * l0 + p11 * l1 + p21 * l2 + p31
+        world[m + 14] = p02 * l0 + p12 * l1 + p22 * l2 + p32
+        world[m + 15] = 1f
+    }
+
+    private fun reset(slot: Int) {
+        setPosition(slot, 0f, 0f, 0f)
+        setRotation(slot, 0f, 0f, 0f, 1f)
+        setScale(slot, 1f, 1f, 1f)
+
+        val m = slot * MATRIX_STRIDE
+        for (i in 0 until MATRIX_STRIDE) {
+            val value = if (i % 5 == 0) 1f else 0f
+            localMatrices[m + i] = value
+            worldMatrices[m + i] = value
+        }
+    }
+
+    private fun grow() {
+        capacity *= 2
+        positions = positions.copyOf(capacity * POSITION_STRIDE)
+        rotations = rotations.copyOf(capacity * ROTATION_STRIDE)
+        scales = scales.copyOf(capacity * SCALE_STRIDE)
+        localMatrices = localMatrices.copyOf(capacity * MATRIX_STRIDE)
+        worldMatrices = worldMatrices.copyOf(capacity * MATRIX_STRIDE)
+        freeSlots = freeSlots.copyOf(capacity)
+        references = references.copyOf(capacity)
+    }
+
+    private class SlotReference(owner: Any, val slot: Int, queue: ReferenceQueue<Any>) : WeakReference<Any>(owner, queue)
+}
@@ -0,0 +1,21 @@
+package org.meganekkovr
+
+/**
+ * Detects classes which override `update(FrameInput)`. Results are cached per class.
+ */
+internal object UpdateOverrides {
+
+    private val cache = HashMap<Class<*>, Boolean>()
+
+    /**
+     * @param clazz Subclass of [base].
+     * @param base  Class which declares default `update(FrameInput)`.
+     * @return `true` if [clazz] or one of its superclasses below [base] overrides it.
+     */
+    @Synchronized
+    fun of(clazz: Class<*>, base: Class<*>): Boolean {
+        return cache.getOrPut(clazz) {
+            clazz.getMethod("update", FrameInput::class.java).declaringClass != base
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.meganekkovr
+
+/**
+ * Decides when to latch video frames so that presentation time matches predicted display time.
+ * Set this to [SurfaceRendererComponent.videoFramePacer] to pace video surface.
+ *
+ * SurfaceTexture keeps only newest posted frame and its timestamp is known only after latching.
+ * So timestamp of newest frame is estimated from last latched timestamp, number of frames
+ * arrived since then and measured frame interval. Frame which is too early for this display frame
+ * is held until next display frame. Frames replaced before latching are counted as skipped.
+ *
+ * This class has no Android dependency. All times are in nanoseconds.
+ */
+class VideoFramePacer @JvmOverloads constructor(
+        /**
+         * Maximum number of display frames to hold arrived frame. Newer frame replaces held frame.
+         */
+        val maxHoldFrames: Int = DEFAULT_MAX_HOLD_FRAMES) {
+
+    init {
+        require(maxHoldFrames >= 0) { "maxHoldFrames must not be negative." }
+    }
+
+    // Offset from display clock to video clock. Non-zero if producer uses other clock.
+    private var clockOffset = 0L
+    private var lastTimestamp = NO_TIMESTAMP
+
+    // Display frames which held arrived frame in a row
+    private var heldFrames = 0
+
+    /**
+     * Estimated interval between video frames. `0` until two frames are latched.
+     */
+    var frameIntervalNanos = 0L
+        private set
+
+    /**
+     * Presentation time of latched frame minus predicted display time in last display frame.
+     */
+    var lastDriftNanos = 0L
+        private set
+
+    /**
+     * Exponential moving average of absolute drift.
+     */
+    var averageDriftNanos = 0.0
+        private set
+
+    /**
+     * Number of display frames which showed same video frame again while video is playing.
+     */
+    var repeatedFrames = 0L
+        private set
+
+    /**
+     * Number of video frames replaced by newer frame and never displayed.
+     */
+    var skippedFrames = 0L
+        private set
+
+    /**
+     * Decide whether to latch newest frame in this display frame.
+     *
+     * @param arrivedFrames Number of frames posted since last latch.
+     * @param targetNanos   Predicted display time.
+     * @return `true` to latch newest frame. `false` to keep current frame.
+     */
+    fun shouldLatch(arrivedFrames: Int, targetNanos: Long): Boolean {
+
+        if (arrivedFrames <= 0) return false
+
+        // Latch newest until interval is known
+        if (lastTimestamp == NO_TIMESTAMP || frameIntervalNanos <= 0) return true
+
+        if (heldFrames >= maxHoldFrames) return true
+
+        // Hold frame which is presented later than half interval after display time
+        val estimated = lastTimestamp + arrivedFrames * frameIntervalNanos
+        return estimated - (targetNanos + clockOffset) <= frameIntervalNanos / 2
+    }
+
+    /**
+     * Record result of display frame.
+     *
+     * @param arrivedFrames Number of frames posted since last latch, counted before latching.
+     * @param latched       `true` if newest frame was latched in this display frame.
+     * @param timestamp     Presentation time of current frame.
+     * @param targetNanos   Predicted display time.
+     */
+    fun onDisplayed(arrivedFrames: Int, latched: Boolean, timestamp: Long, targetNanos: Long) {
+
+        // Frame counted as arrived may have been latched already with previous frame
+        if (!latched || timestamp == lastTimestamp) {
+            if (arrivedFrames > 0) {
+                heldFrames++
+                repeatedFrames++
+            } else if (frameIntervalNanos > 0) {
+                // Video is playing but next frame has not arrived yet
+                repeatedFrames++
+            }
+            return
+        }
+
+        heldFrames = 0
+        skippedFrames += Math.max(arrivedFrames - 1, 0)
+
+        // Measure interval. Discontinuity like seek resets clock.
+        if (lastTimestamp != NO_TIMESTAMP) {
+            val interval = (timestamp - lastTimestamp) / Math.max(arrivedFrames, 1)
+            if (interval <= 0 || interval > MAX_FRAME_INTERVAL) {
+                reset()
+            } else {
+                frameIntervalNanos = if (frameIntervalNanos == 0L) interval else (frameIntervalNanos * 7 + interval) / 8
+            }
+        }
+
+        // Producer clock differs from display clock
+        if (lastTimestamp == NO_TIMESTAMP && Math.abs(timestamp - targetNanos) > MAX_FRAME_INTERVAL) {
+            clockOffset = timestamp - targetNanos
+        }
+
+        lastTimestamp = timestamp
+        lastDriftNanos = timestamp - (targetNanos + clockOffset)
+        averageDriftNanos += (Math.abs(lastDriftNanos) - averageDriftNanos) * 0.1
+    }
+
+    /**
+     * Forget timing. Call this after seeking.
+     */
+    fun reset() {
+        clockOffset = 0
+        lastTimestamp = NO_TIMESTAMP
+        frameIntervalNanos = 0
+        heldFrames = 0
+    }
+
+    companion object {
+
+        private const val DEFAULT_MAX_HOLD_FRAMES = 2
+        private const val NO_TIMESTAMP = Long.MIN_VALUE
+
+        // Longer interval is treated as discontinuity
+        private const val MAX_FRAME_INTERVAL = 1000000000L
+    }
+}
@@ -0,0 +1,73 @@
+package org.meganekkovr
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Collects dirty world model matrices while updating scene and uploads them
+ * to native `mgn::Entity`s with single JNI call per frame.
+ * Only used in GL thread.
+ */
+internal object WorldMatrixUploader {
+
+    private const val INITIAL_CAPACITY = 256
+    private const val POINTER_BYTES = 8
+    private const val MATRIX_BYTES = TransformStore.MATRIX_STRIDE * 4
+
+    private var capacity = INITIAL_CAPACITY
+    private var count = 0
+    private var pointers = allocate(INITIAL_CAPACITY * POINTER_BYTES)
+    private var matrices = allocate(INITIAL_CAPACITY * MATRIX_BYTES)
+    private var pointerValues = pointers.asLongBuffer()
+    private var matrixValues = matrices.asFloatBuffer()
+
+    /**
+     * Queue world model matrix of [TransformStore] slot for native [Entity].
+     *
+     * @param nativePtr Native `mgn::Entity` pointer.
+     * @param slot      Slot in [TransformStore].
+     */
+    fun add(nativePtr: Long, slot: Int) {
+        if (count == capacity) grow()
+
+        pointerValues.put(count, nativePtr)
+        matrixValues.position(count * TransformStore.MATRIX_STRIDE)
+        matrixValues.put(TransformStore.worldMatrices, slot * TransformStore.MATRIX_STRIDE, TransformStore.MATRIX_STRIDE)
+
+        count++
+    }
+
+    /**
+     * Called from [org.meganekkovr.GearVRActivity.update].
+     * Upload all queued matrices.
+     */
+    fun flush() {
+        FrameStats.worldMatrixUploads = count
+        FrameStats.jniCallsSaved = if (count > 0) count - 1 else 0
+
+        if (count == 0) return
+
+        upload(pointers, matrices, count)
+        count = 0
+    }
+
+    private fun grow() {
+        capacity *= 2
+
+        val newPointers = allocate(capacity * POINTER_BYTES)
+        newPointers.put(pointers).clear()
+        pointers = newPointers
+        pointerValues = pointers.asLongBuffer()
+
+        val newMatrices = allocate(capacity * MATRIX_BYTES)
+        newMatrices.put(matrices).clear()
+        matrices = newMatrices
+        matrixValues = matrices.asFloatBuffer()
+    }
+
+    private fun allocate(bytes: Int): ByteBuffer {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder())
+    }
+
+    private external fun upload(pointers: ByteBuffer, matrices: ByteBuffer, count: Int)
+}
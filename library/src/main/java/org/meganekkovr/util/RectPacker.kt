@@ -0,0 +1,79 @@
+package org.meganekkovr.util
+
+/**
+ * Packs rectangles into fixed size area with binary tree.
+ * Freed rectangles are merged with their empty siblings, so space can be reused.
+ */
+internal class RectPacker(val width: Int, val height: Int) {
+
+    private val root = Node(null, 0, 0, width, height)
+
+    /**
+     * Allocate area.
+     *
+     * @param width  Width of area.
+     * @param height Height of area.
+     * @return Allocated node or `null` if there is no space.
+     */
+    fun allocate(width: Int, height: Int): Node? {
+        require(width > 0 && height > 0) { "width and height must be positive." }
+
+        val node = root.insert(width, height) ?: return null
+        node.isUsed = true
+        return node
+    }
+
+    /**
+     * Free area allocated by [allocate].
+     *
+     * @param node Allocated node.
+     */
+    fun free(node: Node) {
+        if (!node.isUsed) return
+        node.isUsed = false
+
+        // Merge empty siblings
+        var parent = node.parent
+        while (parent != null && parent.first!!.isEmptyLeaf && parent.second!!.isEmptyLeaf) {
+            parent.first = null
+            parent.second = null
+            parent = parent.parent
+        }
+    }
+
+    class Node internal constructor(internal val parent: Node?, val x: Int, val y: Int, val width: Int, val height: Int) {
+
+        internal var first: Node? = null
+        internal var second: Node? = null
+
+        var isUsed = false
+            internal set
+
+        internal val isEmptyLeaf: Boolean
+            get() = first == null && !isUsed
+
+        internal fun insert(width: Int, height: Int): Node? {
+
+            val first = this.first
+            val second = this.second
+            if (first != null && second != null) {
+                return first.insert(width, height) ?: second.insert(width, height)
+            }
+
+            if (isUsed || width > this.width || height > this.height) return null
+
+            if (width == this.width && height == this.height) return this
+
+            // Split along longer remaining side
+            if (this.width - width > this.height - height) {
+                this.first = Node(this, x, y, width, this.height)
+                this.second = Node(this, x + width, y, this.width - width, this.height)
+            } else {
+                this.first = Node(this, x, y, this.width, height)
+                this.second = Node(this, x, y + height, this.width, this.height - height)
+            }
+
+            return this.first!!.insert(width, height)
+        }
+    }
+}
@@ -84,7 +84,7 @@ internal class DefautPrimitive : XmlPrimitiveFactory.XmlPrimitiveHandler {
         if (srcVal.matches("@\\d+".toRegex())) {
             val id = srcVal.substring(1).toInt()
             val drawable = ContextCompat.getDrawable(context, id)
-            return Entity.from(drawable)
+            return Entity.fromStatic(drawable)
         }
 
         // src="@drawable/xxx"
@@ -95,7 +95,7 @@ internal class DefautPrimitive : XmlPrimitiveFactory.XmlPrimitiveHandler {
             val id = context.resources.getIdentifier(drawableName, "drawable", context.packageName)
             if (id != 0) {
                 val drawable = ContextCompat.getDrawable(context, id)
-                return Entity.from(drawable)
+                return Entity.fromStatic(drawable)
             }
         }
 
@@ -9,6 +9,7 @@ import org.meganekkovr.util.ObjectFactory
 
 /**
  * Define `surface` attribute.
+ * `opaque: true` marks surface without transparent pixels, such as background.
  */
 internal class SurfaceHandler : XmlAttributeParser.XmlAttributeHandler {
 
@@ -48,6 +49,8 @@ internal class SurfaceHandler : XmlAttributeParser.XmlAttributeHandler {
 
         }
 
+        surfaceRendererComponent.isOpaque = map["opaque"]?.toBoolean() ?: false
+
         entity.add(surfaceRendererComponent)
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "AllocationTracker.h"
+#include "GlResourceRegistry.h"
+#include <atomic>
+#include <jni.h>
+
+namespace mgn {
+
+static std::atomic<int64_t> counts[ALLOCATION_TYPE_COUNT];
+static std::atomic<int64_t> bytes[ALLOCATION_TYPE_COUNT];
+
+void AllocationTracker::Allocate(const AllocationType type,
+                                 const int64_t size) {
+  counts[type].fetch_add(1, std::memory_order_relaxed);
+  bytes[type].fetch_add(size, std::memory_order_relaxed);
+}
+
+void AllocationTracker::Free(const AllocationType type, const int64_t size) {
+  counts[type].fetch_sub(1, std::memory_order_relaxed);
+  bytes[type].fetch_sub(size, std::memory_order_relaxed);
+}
+
+void AllocationTracker::Resize(const AllocationType type,
+                               const int64_t delta) {
+  bytes[type].fetch_add(delta, std::memory_order_relaxed);
+}
+
+void AllocationTracker::GetStats(int64_t *values) {
+  for (int i = 0; i < ALLOCATION_TYPE_COUNT; i++) {
+    values[i * 2] = counts[i].load(std::memory_order_relaxed);
+    values[i * 2 + 1] = bytes[i].load(std::memory_order_relaxed);
+  }
+}
+} // namespace mgn
+
+/*
+ * JNI methods
+ */
+
+extern "C" {
+
+void Java_org_meganekkovr_NativeAllocationStats_getStats(JNIEnv *jni,
+                                                         jclass clazz,
+                                                         jlongArray values) {
+  int64_t stats[mgn::ALLOCATION_TYPE_COUNT * 2];
+  mgn::AllocationTracker::GetStats(stats);
+
+  jlong elements[mgn::ALLOCATION_TYPE_COUNT * 2];
+  for (int i = 0; i < mgn::ALLOCATION_TYPE_COUNT * 2; i++) {
+    elements[i] = stats[i];
+  }
+  jni->SetLongArrayRegion(values, 0, mgn::ALLOCATION_TYPE_COUNT * 2, elements);
+}
+
+void Java_org_meganekkovr_NativeAllocationStats_logLeakedGlResources(
+    JNIEnv *jni, jclass clazz) {
+  mgn::GlResourceRegistry::Get().LogLeakedResources();
+}
+
+} // extern "C"
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef ALLOCATION_TRACKER_H
+#define ALLOCATION_TRACKER_H
+
+#include <stdint.h>
+
+namespace mgn {
+
+/*
+ * Live native allocations per type.
+ * Order must be same as NativeAllocationStats.Type in Java side.
+ */
+enum AllocationType {
+  ALLOCATION_HYBRID_OBJECT = 0,
+  ALLOCATION_ENTITY,
+  ALLOCATION_GEOMETRY_COMPONENT,
+  ALLOCATION_SURFACE_RENDERER_COMPONENT,
+  ALLOCATION_SURFACE_DEF,
+  ALLOCATION_TEXTURE,
+  ALLOCATION_GEOMETRY_BUFFER,
+  ALLOCATION_TYPE_COUNT
+};
+
+/*
+ * Thread safe counters of live count and estimated bytes.
+ */
+class AllocationTracker {
+public:
+  static void Allocate(const AllocationType type, const int64_t size);
+  static void Free(const AllocationType type, const int64_t size);
+
+  // Change estimated bytes without changing count.
+  static void Resize(const AllocationType type, const int64_t delta);
+
+  // Fill count and bytes of each type. values must have
+  // ALLOCATION_TYPE_COUNT * 2 elements.
+  static void GetStats(int64_t *values);
+};
+}
+
+#endif
@@ -14,13 +14,25 @@
  * limitations under the License.
  */
 #include "Entity.h"
+#include "AllocationTracker.h"
 #include "util/convert.h"
 
 namespace mgn {
 
-Entity::Entity() : surfaceDef(nullptr) {}
+Entity::Entity()
+    : surfaceDef(nullptr), material(nullptr), materialVersion(0),
+      renderQueue(RENDER_QUEUE_AUTO),
+      appliedRenderQueue(RENDER_QUEUE_TRANSPARENT) {
+  AllocationTracker::Allocate(ALLOCATION_ENTITY, sizeof(Entity));
+}
 
-Entity::~Entity() { delete surfaceDef; }
+Entity::~Entity() {
+  if (surfaceDef != nullptr) {
+    delete surfaceDef;
+    AllocationTracker::Free(ALLOCATION_SURFACE_DEF, sizeof(ovrSurfaceDef));
+  }
+  AllocationTracker::Free(ALLOCATION_ENTITY, sizeof(Entity));
+}
 
 void Entity::SetWorldModelMatrix(const Matrix4f &m) { this->modelMatrix = m; }
 const Matrix4f &Entity::GetWorldModelMatrix() { return modelMatrix; }
@@ -29,19 +41,50 @@ ovrSurfaceDef *Entity::GetOrCreateSurfaceDef() {
 
   if (surfaceDef == nullptr) {
     surfaceDef = new ovrSurfaceDef();
-
-    // Enable alpha blending
-    surfaceDef->graphicsCommand.GpuState.blendMode = GL_FUNC_ADD;
-    surfaceDef->graphicsCommand.GpuState.blendSrc = GL_ONE;
-    surfaceDef->graphicsCommand.GpuState.blendDst = GL_ONE_MINUS_SRC_ALPHA;
-    surfaceDef->graphicsCommand.GpuState.blendEnable =
-        ovrGpuState::BLEND_ENABLE;
+    AllocationTracker::Allocate(ALLOCATION_SURFACE_DEF, sizeof(ovrSurfaceDef));
   }
 
   return surfaceDef;
 }
 
 ovrSurfaceDef *Entity::GetSurfaceDef() { return surfaceDef; }
+
+void Entity::SetMaterial(Material *material) {
+  this->material = material;
+
+  // Applied in next frame
+  materialVersion = material != nullptr ? material->GetVersion() - 1 : 0;
+
+  // Unbind uniforms of previous material
+  if (material == nullptr && surfaceDef != nullptr) {
+    surfaceDef->graphicsCommand = ovrGraphicsCommand();
+  }
+}
+
+bool Entity::ApplyMaterial(ShaderLibrary &library) {
+  if (material == nullptr || surfaceDef == nullptr) return false;
+
+  const int version = material->GetVersion();
+  if (version != materialVersion) {
+    appliedRenderQueue = renderQueue != RENDER_QUEUE_AUTO
+                             ? renderQueue
+                             : material->GetRenderQueue();
+    material->Apply(surfaceDef->graphicsCommand, library, appliedRenderQueue);
+    materialVersion = version;
+  }
+  return true;
+}
+
+void Entity::SetRenderQueue(RenderQueue renderQueue) {
+  this->renderQueue = renderQueue;
+
+  // Apply again in next frame
+  if (material != nullptr) {
+    materialVersion = material->GetVersion() - 1;
+  }
+}
+
+RenderQueue Entity::GetRenderQueue() { return appliedRenderQueue; }
 } // namespace mgn
 
 /*
@@ -54,13 +97,26 @@ jlong Java_org_meganekkovr_Entity_newInstance(JNIEnv *jni, jobject thiz) {
   return reinterpret_cast<jlong>(new mgn::Entity());
 }
 
-void Java_org_meganekkovr_Entity_setWorldModelMatrix(JNIEnv *jni, jclass clazz,
-                                                     jlong entityPtr,
-                                                     jfloatArray matrix) {
+void Java_org_meganekkovr_Entity_setRenderQueue(JNIEnv *jni, jobject thiz,
+                                                jlong nativePtr,
+                                                jint renderQueue) {
+  mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(nativePtr);
+  entity->SetRenderQueue(static_cast<mgn::RenderQueue>(renderQueue));
+}
 
-  OVR::Matrix4f m = mgn::floatArrayToMatrix4f(jni, matrix);
+void Java_org_meganekkovr_WorldMatrixUploader_upload(JNIEnv *jni, jobject thiz,
+                                                     jobject pointers,
+                                                     jobject matrices,
+                                                     jint count) {
 
-  mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(entityPtr);
-  entity->SetWorldModelMatrix(m);
+  const jlong *entityPtrs =
+      static_cast<const jlong *>(jni->GetDirectBufferAddress(pointers));
+  const jfloat *values =
+      static_cast<const jfloat *>(jni->GetDirectBufferAddress(matrices));
+
+  for (int i = 0; i < count; ++i) {
+    mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(entityPtrs[i]);
+    entity->SetWorldModelMatrix(mgn::floatsToMatrix4f(values + i * 16));
+  }
 }
 } // extern "C"
\ No newline at end of file
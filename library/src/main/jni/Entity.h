@@ -17,6 +17,7 @@
 #define ENTITY_H
 
 #include "HybridObject.h"
+#include "Material.h"
 #include "SurfaceRender.h"
 
 using namespace OVR;
@@ -33,9 +34,25 @@ public:
   ovrSurfaceDef *GetOrCreateSurfaceDef();
   ovrSurfaceDef *GetSurfaceDef();
 
+  // Material of surface. nullptr to remove.
+  void SetMaterial(Material *material);
+
+  // Apply material to surface if it has changed.
+  // Returns false if entity has no material.
+  bool ApplyMaterial(ShaderLibrary &library);
+
+  // RENDER_QUEUE_AUTO to follow material
+  void SetRenderQueue(RenderQueue renderQueue);
+  // Resolved render queue. Valid after ApplyMaterial.
+  RenderQueue GetRenderQueue();
+
 private:
   Matrix4f modelMatrix;
   ovrSurfaceDef *surfaceDef;
+  Material *material;
+  int materialVersion;
+  RenderQueue renderQueue;
+  RenderQueue appliedRenderQueue;
 };
 }
 
@@ -17,8 +17,12 @@
 #include "Android/JniUtils.h"
 #include "Entity.h"
 #include "GeometryComponent.h"
+#include "GlResourceRegistry.h"
+#include "SortKey.h"
 #include "util/convert.h"
+#include <algorithm>
 #include <jni.h>
+#include <string.h>
 #include <VrApi_Types.h>
 
 using namespace OVR;
@@ -26,9 +30,15 @@ using namespace OVR;
 namespace mgn {
 
 GearVRActivity::GearVRActivity()
-    : hmdMounted(false), clearColorBuffer(true), clearColor(0, 0, 0, 1) {}
+    : hmdMounted(false), clearColorBuffer(true), clearColor(0, 0, 0, 1),
+      frustumCullingEnabled(true), submittedSurfaces(0), culledSurfaces(0),
+      shaderLibrary(nullptr) {}
 
-GearVRActivity::~GearVRActivity() { delete shader; }
+GearVRActivity::~GearVRActivity() {
+  delete shaderLibrary;
+
+  GlResourceRegistry::Get().DeleteReleased();
+}
 
 jmethodID GearVRActivity::GetMethodID(const char *name, const char *signature) {
   return app->GetJava()->Env->GetMethodID(app->GetAppInterface()->ActivityClass,
@@ -56,12 +66,11 @@ void GearVRActivity::EnteredVrMode(const ovrIntentType intentType,
     jni->CallVoidMethod(app->GetJava()->ActivityObject, initMethodID);
 
     updateMethodID = GetMethodID("update", "(J)V");
-    collectSurfaceDefsMethodID = GetMethodID("collectSurfaceDefs", "(J)V");
     onKeyEventMethodID = GetMethodID("onKeyEvent", "(III)Z");
     onHmdMountedMethodID = GetMethodID("onHmdMounted", "()V");
     onHmdUnmountedMethodID = GetMethodID("onHmdUnmounted", "()V");
 
-    shader = new Shader();
+    shaderLibrary = new ShaderLibrary();
   }
 
   // GearVRActivity.enteredVrMode()
@@ -94,6 +103,9 @@ ovrFrameResult GearVRActivity::Frame(const ovrFrameInput &frame) {
   // Input handling
   HandleInput(frame.Input);
 
+  // Delete GL resources released in last frame
+  GlResourceRegistry::Get().DeleteReleased();
+
   // Update frame
   centerEyeViewMatrix = vrapi_GetViewMatrixFromPose(&frame.Tracking.HeadPose.Pose);
 
@@ -105,18 +117,19 @@ ovrFrameResult GearVRActivity::Frame(const ovrFrameInput &frame) {
   res.ClearColor = clearColor;
   res.FrameMatrices.CenterView = centerEyeViewMatrix;
 
-  // Collect ovrDrawSurfaces from Scene
-  jni->CallVoidMethod(java->ActivityObject, collectSurfaceDefsMethodID,
-                      (jlong)&res.Surfaces);
+  for (int eye = 0; eye < VRAPI_FRAME_LAYER_EYE_MAX; eye++) {
+    res.FrameMatrices.EyeView[eye] = frame.Tracking.Eye[eye].ViewMatrix;
+    // Calculate projection matrix using custom near plane value.
+    res.FrameMatrices.EyeProjection[eye] = ovrMatrix4f_CreateProjectionFov(frame.FovX, frame.FovY, 0.0f, 0.0f, 1.0f, 0.0f);
 
-  // Set all program
-  for (int i = 0; i < res.Surfaces.GetSizeI(); i++) {
-    ovrDrawSurface drawSurface = res.Surfaces[i];
-    ovrSurfaceDef *surfaceDef =
-        const_cast<ovrSurfaceDef *>(drawSurface.surface);
-    surfaceDef->graphicsCommand.Program = shader->GetProgram();
+    // For frustum culling
+    eyeViewProjectionMatrix[eye] =
+        Matrix4f(res.FrameMatrices.EyeProjection[eye]) *
+        Matrix4f(res.FrameMatrices.EyeView[eye]);
   }
 
+  // Collect ovrDrawSurfaces from render list
+  CollectSurfaces(res.Surfaces);
 
   res.FrameIndex = frame.FrameNumber;
   res.DisplayTime = frame.PredictedDisplayTimeInSeconds;
@@ -130,10 +143,6 @@ ovrFrameResult GearVRActivity::Frame(const ovrFrameInput &frame) {
 
   worldLayer.HeadPose = frame.Tracking.HeadPose;
   for (int eye = 0; eye < VRAPI_FRAME_LAYER_EYE_MAX; eye++) {
-    res.FrameMatrices.EyeView[eye] = frame.Tracking.Eye[eye].ViewMatrix;
-    // Calculate projection matrix using custom near plane value.
-    res.FrameMatrices.EyeProjection[eye] = ovrMatrix4f_CreateProjectionFov(frame.FovX, frame.FovY, 0.0f, 0.0f, 1.0f, 0.0f);
-
     worldLayer.Textures[eye].ColorSwapChain = frame.ColorTextureSwapChain[eye];
     worldLayer.Textures[eye].SwapChainIndex = frame.TextureSwapChainIndex;
     worldLayer.Textures[eye].TexCoordsFromTanAngles = frame.TexCoordsFromTanAngles;
@@ -147,6 +156,131 @@ const ovrMatrix4f &GearVRActivity::GetCenterEyeViewMatrix() {
   return centerEyeViewMatrix;
 }
 
+void GearVRActivity::SetRenderList(const jlong *entityPointers,
+                                   const int count) {
+  renderList.Resize(count);
+  for (int i = 0; i < count; i++) {
+    renderList[i] = reinterpret_cast<Entity *>(entityPointers[i]);
+  }
+}
+
+void GearVRActivity::CollectSurfaces(Array<ovrDrawSurface> &surfaces) {
+  submittedSurfaces = 0;
+  culledSurfaces = 0;
+
+  const Vector3f cameraPosition =
+      Matrix4f(centerEyeViewMatrix).Inverted().GetTranslation();
+
+  for (int i = 0; i < renderList.GetSizeI(); i++) {
+    Entity *entity = renderList[i];
+    ovrSurfaceDef *surfaceDef = entity->GetSurfaceDef();
+
+    // Only draw if surfaceDef is valid
+    if (surfaceDef == nullptr) continue;
+
+    // Surface without material can't be drawn
+    if (!entity->ApplyMaterial(*shaderLibrary)) continue;
+
+    const Matrix4f &modelMatrix = entity->GetWorldModelMatrix();
+    if (frustumCullingEnabled &&
+        !IsInFrustum(modelMatrix, surfaceDef->geo.localBounds)) {
+      culledSurfaces++;
+      continue;
+    }
+
+    SortedSurface &sorted = sortedSurfaces.PushDefault();
+    sorted.key = GetSortKey(entity, modelMatrix, cameraPosition);
+    sorted.surface = ovrDrawSurface(modelMatrix, surfaceDef);
+    submittedSurfaces++;
+  }
+
+  // Opaque, alpha tested and transparent in this order.
+  // Stable to keep scene order of surfaces with same key.
+  std::stable_sort(sortedSurfaces.GetDataPtr(),
+                   sortedSurfaces.GetDataPtr() + sortedSurfaces.GetSizeI());
+  for (int i = 0; i < sortedSurfaces.GetSizeI(); i++) {
+    surfaces.PushBack(sortedSurfaces[i].surface);
+  }
+  sortedSurfaces.Clear();
+}
+
+// See SortKey.h for layout.
+uint64_t GearVRActivity::GetSortKey(Entity *entity,
+                                    const Matrix4f &modelMatrix,
+                                    const Vector3f &cameraPosition) {
+  const ovrSurfaceDef *surfaceDef = entity->GetSurfaceDef();
+  const ovrGraphicsCommand &command = surfaceDef->graphicsCommand;
+
+  uint32_t texture = 0;
+  for (int i = 0; i < ovrUniform::MAX_UNIFORMS; i++) {
+    if (command.Program.Uniforms[i].Type == ovrProgramParmType::MAX) break;
+    if (command.Program.Uniforms[i].Type ==
+            ovrProgramParmType::TEXTURE_SAMPLED &&
+        command.UniformData[i].Data != nullptr) {
+      texture = static_cast<GlTexture *>(command.UniformData[i].Data)->texture;
+      break;
+    }
+  }
+  const uint64_t state = MakeSortKeyState(command.Program.Program, texture);
+  const RenderQueue renderQueue = entity->GetRenderQueue();
+
+  // Surface enclosing camera like background globe is behind everything.
+  // Bounds which are not computed contain nothing.
+  if (renderQueue == RENDER_QUEUE_TRANSPARENT &&
+      surfaceDef->geo.localBounds.Contains(
+          modelMatrix.Inverted().Transform(cameraPosition))) {
+    return MakeSortKey(renderQueue, state, SORT_KEY_FARTHEST_DEPTH);
+  }
+
+  // Distance along view direction. Surfaces at or behind camera have same
+  // depth and keep scene order.
+  const Vector3f position = Matrix4f(centerEyeViewMatrix)
+                                .Transform(modelMatrix.GetTranslation());
+  float depth = -position.z;
+  if (!(depth > 0.0f)) depth = 0.0f;
+  uint32_t depthBits;
+  memcpy(&depthBits, &depth, sizeof(depthBits));
+
+  return MakeSortKey(renderQueue, state, depthBits);
+}
+
+bool GearVRActivity::IsInFrustum(const Matrix4f &modelMatrix,
+                                 const Bounds3f &localBounds) {
+
+  const Vector3f &mins = localBounds.GetMins();
+  const Vector3f &maxs = localBounds.GetMaxs();
+
+  // Bounds are not computed. Never cull.
+  if (mins.x > maxs.x || mins.y > maxs.y || mins.z > maxs.z) {
+    return true;
+  }
+
+  for (int eye = 0; eye < VRAPI_FRAME_LAYER_EYE_MAX; eye++) {
+    const Matrix4f mvp = eyeViewProjectionMatrix[eye] * modelMatrix;
+
+    // Count corners outside of each clip plane.
+    // Far plane is infinite, so it is not tested.
+    int left = 0, right = 0, bottom = 0, top = 0, near = 0;
+    for (int i = 0; i < 8; i++) {
+      const Vector4f corner((i & 1) ? maxs.x : mins.x, (i & 2) ? maxs.y : mins.y,
+                            (i & 4) ? maxs.z : mins.z, 1.0f);
+      const Vector4f clip = mvp.Transform(corner);
+      if (clip.x < -clip.w) left++;
+      if (clip.x > clip.w) right++;
+      if (clip.y < -clip.w) bottom++;
+      if (clip.y > clip.w) top++;
+      if (clip.z < -clip.w) near++;
+    }
+
+    // Visible from this eye unless all corners are outside of same plane
+    if (left < 8 && right < 8 && bottom < 8 && top < 8 && near < 8) {
+      return true;
+    }
+  }
+
+  return false;
+}
+
 void GearVRActivity::HandleInput(const VrInput &input) {
 
   // process input events first because this mirrors the behavior when
@@ -230,18 +364,33 @@ void Java_org_meganekkovr_GearVRActivity_getClearColor(JNIEnv *jni,
   mgn::FillElementsUnSafe(jni, clearColor, color);
 }
 
-void Java_org_meganekkovr_GearVRActivity_addSurfaceDef(JNIEnv *jni,
-                                                       jclass clazz,
-                                                       jlong entityPtr,
-                                                       jlong surfacesPtr) {
+void Java_org_meganekkovr_GearVRActivity_setFrustumCullingEnabled(
+    JNIEnv *jni, jclass clazz, jlong appPtr, jboolean frustumCullingEnabled) {
+  mgn::GearVRActivity *activity =
+      (mgn::GearVRActivity *)((App *)appPtr)->GetAppInterface();
+  activity->SetFrustumCullingEnabled(frustumCullingEnabled);
+}
 
-  mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(entityPtr);
-  Array<ovrDrawSurface> *surfaces =
-      reinterpret_cast<Array<ovrDrawSurface> *>(surfacesPtr);
-  ovrSurfaceDef *surfaceDef = entity->GetSurfaceDef();
+void Java_org_meganekkovr_GearVRActivity_getSurfaceStats(JNIEnv *jni,
+                                                         jclass clazz,
+                                                         jlong appPtr,
+                                                         jintArray stats) {
+  mgn::GearVRActivity *activity =
+      (mgn::GearVRActivity *)((App *)appPtr)->GetAppInterface();
+  const jint values[] = {activity->GetSubmittedSurfaces(),
+                         activity->GetCulledSurfaces()};
+  jni->SetIntArrayRegion(stats, 0, 2, values);
+}
 
-  // Only draw if surfaceDef is valid
-  surfaces->PushBack(ovrDrawSurface(entity->GetWorldModelMatrix(), surfaceDef));
+void Java_org_meganekkovr_RenderList_setRenderList(JNIEnv *jni, jclass clazz,
+                                                   jlong appPtr,
+                                                   jlongArray entityPointers,
+                                                   jint count) {
+  mgn::GearVRActivity *activity =
+      (mgn::GearVRActivity *)((App *)appPtr)->GetAppInterface();
+  jlong *pointers = jni->GetLongArrayElements(entityPointers, NULL);
+  activity->SetRenderList(pointers, count);
+  jni->ReleaseLongArrayElements(entityPointers, pointers, JNI_ABORT);
 }
 
 } // extern "C"
\ No newline at end of file
@@ -17,7 +17,9 @@
 #define GEARVR_ACTIVITY_H
 
 #include "App.h"
-#include "Shader.h"
+#include "Entity.h"
+#include "ShaderLibrary.h"
+#include <stdint.h>
 
 using namespace OVR;
 
@@ -47,22 +49,51 @@ public:
 
   const Vector4f &GetClearColor() { return clearColor; }
 
+  bool IsInFrustum(const Matrix4f &modelMatrix, const Bounds3f &localBounds);
+
+  void SetFrustumCullingEnabled(const bool frustumCullingEnabled) {
+    this->frustumCullingEnabled = frustumCullingEnabled;
+  }
+
+  void SetRenderList(const jlong *entityPointers, const int count);
+
+  int GetSubmittedSurfaces() { return submittedSurfaces; }
+
+  int GetCulledSurfaces() { return culledSurfaces; }
+
 private:
   bool hmdMounted;
   bool clearColorBuffer;
   Vector4f clearColor;
   ovrMatrix4f centerEyeViewMatrix;
+  Matrix4f eyeViewProjectionMatrix[VRAPI_FRAME_LAYER_EYE_MAX];
+  bool frustumCullingEnabled;
+  Array<Entity *> renderList;
+  int submittedSurfaces;
+  int culledSurfaces;
   jmethodID updateMethodID;
-  jmethodID collectSurfaceDefsMethodID;
   jmethodID onKeyEventMethodID;
   jmethodID onHmdMountedMethodID;
   jmethodID onHmdUnmountedMethodID;
-  Shader *shader;
+  ShaderLibrary *shaderLibrary;
+
+  struct SortedSurface {
+    uint64_t key;
+    ovrDrawSurface surface;
+    bool operator<(const SortedSurface &other) const {
+      return key < other.key;
+    }
+  };
+  // Reused every frame. Capacity never shrinks to avoid allocation.
+  Array<SortedSurface, ArrayConstPolicy<0, 16, true>> sortedSurfaces;
 
   inline jmethodID GetMethodID(const char *name, const char *signature);
   inline bool OnKeyEvent(const int keyCode, const int repeatCount,
                          const KeyEventType eventType);
   inline void HandleInput(const VrInput &input);
+  inline void CollectSurfaces(Array<ovrDrawSurface> &surfaces);
+  inline uint64_t GetSortKey(Entity *entity, const Matrix4f &modelMatrix,
+                             const Vector3f &cameraPosition);
 };
 }
 #endif
\ No newline at end of file
@@ -14,19 +14,56 @@
  * limitations under the License.
  */
 #include "GeometryComponent.h"
+#include "AllocationTracker.h"
+#include "GlResourceRegistry.h"
 #include "util/convert.h"
 
 namespace mgn {
 
-GeometryComponent::GeometryComponent() {}
+// Estimated bytes per vertex. Position, color and UV.
+static const int64_t VERTEX_BYTES = sizeof(float) * (3 + 4 + 2);
 
-GeometryComponent::~GeometryComponent() { geometry.Free(); }
+static int64_t EstimateBytes(const GlGeometry &geo) {
+  return geo.vertexCount * VERTEX_BYTES + geo.indexCount * sizeof(TriangleIndex);
+}
+
+GeometryComponent::GeometryComponent() : entity(nullptr) {
+  AllocationTracker::Allocate(ALLOCATION_GEOMETRY_COMPONENT,
+                              sizeof(GeometryComponent));
+}
+
+GeometryComponent::~GeometryComponent() {
+  if (geometry.vertexBuffer != 0) {
+    AllocationTracker::Free(ALLOCATION_GEOMETRY_BUFFER, EstimateBytes(geometry));
+    GlResourceRegistry::Get().ReleaseGeometry(geometry);
+  }
+  AllocationTracker::Free(ALLOCATION_GEOMETRY_COMPONENT,
+                          sizeof(GeometryComponent));
+}
 
 GlGeometry &GeometryComponent::GetGeometry() { return geometry; }
 
 void GeometryComponent::SetGeometry(const GlGeometry &geo) {
+
+  // Free previous geometry
+  if (geometry.vertexBuffer != 0) {
+    AllocationTracker::Free(ALLOCATION_GEOMETRY_BUFFER, EstimateBytes(geometry));
+    GlResourceRegistry::Get().ReleaseGeometry(geometry);
+  }
+
+  if (geo.vertexBuffer != 0) {
+    AllocationTracker::Allocate(ALLOCATION_GEOMETRY_BUFFER, EstimateBytes(geo));
+    GlResourceRegistry::Get().AddGeometry(geo, this);
+  }
   this->geometry = geo;
+
+  // Entity has copy of geometry
+  if (entity != nullptr) {
+    entity->GetOrCreateSurfaceDef()->geo = geometry;
+  }
 }
+
+void GeometryComponent::SetEntity(Entity *entity) { this->entity = entity; }
 }
 
 /*
@@ -94,6 +131,22 @@ void Java_org_meganekkovr_GeometryComponent_setEntityGeometry(JNIEnv *jni,
 
   ovrSurfaceDef *surfaceDef = entity->GetOrCreateSurfaceDef();
   surfaceDef->geo = geo->GetGeometry();
+  geo->SetEntity(entity);
+}
+
+void Java_org_meganekkovr_GeometryComponent_removeEntityGeometry(
+    JNIEnv *jni, jclass clazz, jlong entityPtr, jlong nativePtr) {
+
+  mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(entityPtr);
+  mgn::GeometryComponent *geo =
+      reinterpret_cast<mgn::GeometryComponent *>(nativePtr);
+  geo->SetEntity(nullptr);
+
+  // Geometry will be freed with GeometryComponent
+  ovrSurfaceDef *surfaceDef = entity->GetSurfaceDef();
+  if (surfaceDef != nullptr) {
+    surfaceDef->geo = GlGeometry();
+  }
 }
 
 } // extern "C"
\ No newline at end of file
@@ -31,8 +31,12 @@ public:
   GlGeometry &GetGeometry();
   void SetGeometry(const GlGeometry &geo);
 
+  // Entity which this is attached to.
+  void SetEntity(Entity *entity);
+
 private:
   GlGeometry geometry;
+  Entity *entity;
 };
 }
 
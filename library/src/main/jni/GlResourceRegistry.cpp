@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "GlResourceRegistry.h"
+#include "Kernel/OVR_LogUtils.h"
+
+namespace mgn {
+
+GlResourceRegistry &GlResourceRegistry::Get() {
+  static GlResourceRegistry instance;
+  return instance;
+}
+
+void GlResourceRegistry::Add(OwnerMap &resources, const GLuint key,
+                             const void *owner) {
+  resources[key] = owner;
+  ownedCounts[owner]++;
+}
+
+bool GlResourceRegistry::Release(OwnerMap &resources, const GLuint key) {
+  auto it = resources.find(key);
+  if (it == resources.end()) {
+    return false;
+  }
+  auto count = ownedCounts.find(it->second);
+  if (count != ownedCounts.end() && --count->second == 0) {
+    ownedCounts.erase(count);
+  }
+  resources.erase(it);
+  return true;
+}
+
+void GlResourceRegistry::MarkLeaked(OwnerMap &resources, const void *owner,
+                                    const char *type) {
+  for (auto &resource : resources) {
+    if (resource.second == owner) {
+      leaked.PushBack({type, resource.first, owner});
+      resource.second = nullptr;
+    }
+  }
+}
+
+void GlResourceRegistry::AddTexture(const GLuint texture, const void *owner) {
+  std::lock_guard<std::mutex> lock(mutex);
+  Add(textures, texture, owner);
+}
+
+void GlResourceRegistry::ReleaseTexture(const GLuint texture) {
+  std::lock_guard<std::mutex> lock(mutex);
+  if (Release(textures, texture)) {
+    releasedTextures.PushBack(texture);
+  }
+}
+
+void GlResourceRegistry::AddGeometry(const GlGeometry &geometry,
+                                     const void *owner) {
+  std::lock_guard<std::mutex> lock(mutex);
+  Add(geometries, geometry.vertexBuffer, owner);
+}
+
+void GlResourceRegistry::ReleaseGeometry(const GlGeometry &geometry) {
+  std::lock_guard<std::mutex> lock(mutex);
+  if (Release(geometries, geometry.vertexBuffer)) {
+    releasedGeometries.PushBack(geometry);
+  }
+}
+
+void GlResourceRegistry::AddProgram(const GlProgram &program,
+                                    const void *owner) {
+  std::lock_guard<std::mutex> lock(mutex);
+  Add(programs, program.Program, owner);
+}
+
+void GlResourceRegistry::ReleaseProgram(const GlProgram &program) {
+  std::lock_guard<std::mutex> lock(mutex);
+  if (Release(programs, program.Program)) {
+    releasedPrograms.PushBack(program);
+  }
+}
+
+void GlResourceRegistry::OwnerDeleted(const void *owner) {
+  std::lock_guard<std::mutex> lock(mutex);
+  auto count = ownedCounts.find(owner);
+  if (count == ownedCounts.end()) {
+    return;
+  }
+
+  // Leaked resources have null owner, so they are never freed by
+  // a new object allocated at same address.
+  MarkLeaked(textures, owner, "texture");
+  MarkLeaked(geometries, owner, "geometry");
+  MarkLeaked(programs, owner, "program");
+  ownedCounts.erase(count);
+}
+
+void GlResourceRegistry::DeleteReleased() {
+  std::lock_guard<std::mutex> lock(mutex);
+
+  if (releasedTextures.GetSizeI() > 0) {
+    glDeleteTextures(releasedTextures.GetSizeI(), &releasedTextures[0]);
+    releasedTextures.Clear();
+  }
+
+  for (int i = 0; i < releasedGeometries.GetSizeI(); i++) {
+    releasedGeometries[i].Free();
+  }
+  releasedGeometries.Clear();
+
+  for (int i = 0; i < releasedPrograms.GetSizeI(); i++) {
+    GlProgram::Free(releasedPrograms[i]);
+  }
+  releasedPrograms.Clear();
+}
+
+void GlResourceRegistry::LogLeakedResources() {
+  std::lock_guard<std::mutex> lock(mutex);
+  if (leaked.GetSizeI() == 0) {
+    return;
+  }
+
+  LOG("%d GL resources were leaked by deleted owners", leaked.GetSizeI());
+  for (int i = 0; i < leaked.GetSizeI(); i++) {
+    LOG("Leaked %s %u: owner %p", leaked[i].type, leaked[i].key,
+        leaked[i].owner);
+  }
+  leaked.Clear();
+}
+} // namespace mgn
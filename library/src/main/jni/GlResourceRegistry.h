@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef GL_RESOURCE_REGISTRY_H
+#define GL_RESOURCE_REGISTRY_H
+
+#include "GlGeometry.h"
+#include "GlProgram.h"
+#include <mutex>
+#include <unordered_map>
+
+using namespace OVR;
+
+namespace mgn {
+
+/*
+ * Owns GL textures, geometry buffers and programs created by Meganekko.
+ * Released resources are deleted later in GL thread by DeleteReleased(),
+ * so they can be released from any thread.
+ *
+ * Each resource is added with its owner. If owner is deleted without
+ * releasing it, the resource is leaked and reported by LogLeakedResources().
+ */
+class GlResourceRegistry {
+public:
+  static GlResourceRegistry &Get();
+
+  void AddTexture(const GLuint texture, const void *owner);
+  void ReleaseTexture(const GLuint texture);
+
+  void AddGeometry(const GlGeometry &geometry, const void *owner);
+  void ReleaseGeometry(const GlGeometry &geometry);
+
+  void AddProgram(const GlProgram &program, const void *owner);
+  void ReleaseProgram(const GlProgram &program);
+
+  // Called after owner released its resources in destructor.
+  // Resources still held by owner are marked as leaked.
+  void OwnerDeleted(const void *owner);
+
+  // Must be called in GL thread.
+  void DeleteReleased();
+
+  // Log resources marked as leaked since last call.
+  void LogLeakedResources();
+
+private:
+  // Resource key and its owner. Owner is null after deleted.
+  typedef std::unordered_map<GLuint, const void *> OwnerMap;
+
+  void Add(OwnerMap &resources, const GLuint key, const void *owner);
+  bool Release(OwnerMap &resources, const GLuint key);
+  void MarkLeaked(OwnerMap &resources, const void *owner, const char *type);
+
+  std::mutex mutex;
+
+  OwnerMap textures;
+  OwnerMap geometries; // Key is vertex buffer
+  OwnerMap programs;
+
+  // Number of live resources per owner. Deleted owners are looked up here
+  // first, so resources are scanned only when some are leaked.
+  std::unordered_map<const void *, int> ownedCounts;
+
+  struct LeakedResource {
+    const char *type;
+    GLuint key;
+    const void *owner;
+  };
+  Array<LeakedResource> leaked;
+
+  Array<GLuint> releasedTextures;
+  Array<GlGeometry> releasedGeometries;
+  Array<GlProgram> releasedPrograms;
+};
+}
+
+#endif
@@ -14,10 +14,19 @@
  */
 
 #include "HybridObject.h"
+#include "AllocationTracker.h"
+#include "GlResourceRegistry.h"
 
 namespace mgn {
 
-HybridObject::HybridObject() {}
+// Only count. Bytes are tracked by each subclass.
+HybridObject::HybridObject() {
+  AllocationTracker::Allocate(ALLOCATION_HYBRID_OBJECT, 0);
+}
 
-HybridObject::~HybridObject() {}
+// Subclass destructors have already released their GL resources here.
+HybridObject::~HybridObject() {
+  AllocationTracker::Free(ALLOCATION_HYBRID_OBJECT, 0);
+  GlResourceRegistry::Get().OwnerDeleted(this);
+}
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "Material.h"
+
+namespace mgn {
+
+Material::Material()
+    : features(0), hasCustomProgram(false),
+      renderQueue(RENDER_QUEUE_TRANSPARENT), version(0) {
+
+  // Premultiplied alpha blending
+  gpuState.blendMode = GL_FUNC_ADD;
+  gpuState.blendSrc = GL_ONE;
+  gpuState.blendDst = GL_ONE_MINUS_SRC_ALPHA;
+  gpuState.blendEnable = ovrGpuState::BLEND_ENABLE;
+}
+
+void Material::SetProgramFeatures(int features) {
+  if (this->features == features && !hasCustomProgram) return;
+
+  this->features = features;
+  hasCustomProgram = false;
+  version++;
+}
+
+int Material::GetProgramFeatures() { return features; }
+
+void Material::SetProgram(const GlProgram &program) {
+  this->program = program;
+  hasCustomProgram = true;
+  version++;
+}
+
+void Material::SetUniform(int index, void *data, int count) {
+  uniforms[index].Data = data;
+  uniforms[index].Count = count;
+  version++;
+}
+
+void Material::SetGpuState(const ovrGpuState &gpuState) {
+  this->gpuState = gpuState;
+  version++;
+}
+
+const ovrGpuState &Material::GetGpuState() { return gpuState; }
+
+void Material::SetRenderQueue(RenderQueue renderQueue) {
+  if (this->renderQueue == renderQueue) return;
+
+  this->renderQueue = renderQueue;
+  version++;
+}
+
+RenderQueue Material::GetRenderQueue() { return renderQueue; }
+
+int Material::GetVersion() { return version; }
+
+void Material::Apply(ovrGraphicsCommand &command, ShaderLibrary &library,
+                     RenderQueue renderQueue) {
+
+  // Program is cached by ShaderLibrary
+  command.Program = hasCustomProgram ? program : library.GetProgram(features);
+  command.GpuState = gpuState;
+  if (renderQueue != RENDER_QUEUE_TRANSPARENT) {
+    command.GpuState.blendEnable = ovrGpuState::BLEND_DISABLE;
+  }
+  for (int i = 0; i < ovrUniform::MAX_UNIFORMS; i++) {
+    command.UniformData[i] = uniforms[i];
+  }
+}
+}
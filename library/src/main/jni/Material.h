@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef MATERIAL_H
+#define MATERIAL_H
+
+#include "ShaderLibrary.h"
+
+using namespace OVR;
+
+namespace mgn {
+// Order of rendering. Same order as Entity.RenderQueue.
+enum RenderQueue {
+  RENDER_QUEUE_AUTO = -1,
+  RENDER_QUEUE_OPAQUE = 0,    // Front to back without blending
+  RENDER_QUEUE_ALPHA_TESTED,  // Front to back without blending
+  RENDER_QUEUE_TRANSPARENT,   // Back to front with blending
+};
+
+// Program, GPU state and uniform bindings of surface.
+// Material is applied to ovrSurfaceDef of Entity once when it is attached or
+// changed, not in every frame.
+class Material {
+public:
+  Material();
+
+  // Use variant of ShaderLibrary
+  void SetProgramFeatures(int features);
+  int GetProgramFeatures();
+
+  // Use custom program. Uniforms are bound in order of its parms.
+  void SetProgram(const GlProgram &program);
+
+  // data must be alive while material is used.
+  void SetUniform(int index, void *data, int count = 1);
+
+  void SetGpuState(const ovrGpuState &gpuState);
+  const ovrGpuState &GetGpuState();
+
+  // Default render queue of surfaces using this material
+  void SetRenderQueue(RenderQueue renderQueue);
+  RenderQueue GetRenderQueue();
+
+  // Incremented whenever material is changed
+  int GetVersion();
+
+  // Must be called in GL thread. Blending is disabled except transparent queue.
+  void Apply(ovrGraphicsCommand &command, ShaderLibrary &library,
+             RenderQueue renderQueue);
+
+private:
+  int features;
+  bool hasCustomProgram;
+  GlProgram program;
+  ovrGpuState gpuState;
+  ovrUniformData uniforms[ovrUniform::MAX_UNIFORMS];
+  RenderQueue renderQueue;
+  int version;
+};
+}
+#endif
@@ -14,6 +14,8 @@
  * limitations under the License.
  */
 #include "Shader.h"
+#include "GlResourceRegistry.h"
+#include <string>
 
 namespace mgn {
 static const char *ImageExternalDirectives =
@@ -30,47 +32,84 @@ static const char *VertexShaderSrc =
     "   oTexCoord = vec2( Texm[VIEW_ID] * vec4( TexCoord, 0, 1 ) );\n"
     "}\n";
 
+// Features are selected with preprocessor. No branch at runtime.
 static const char *FragmentShaderSrc =
+    "#ifdef EXTERNAL_TEXTURE\n"
     "uniform samplerExternalOES Texture0;\n"
+    "#else\n"
+    "uniform sampler2D Texture0;\n"
+    "#endif\n"
     "uniform lowp float Opacity;\n"
-    "uniform bool UseChromaKey;\n"
+    "#ifdef CHROMA_KEY\n"
     "uniform highp vec3 ChromaKeyColor;\n"
     "uniform highp float ChromaKeyThreshold;\n"
+    "#endif\n"
+    "#ifdef CHROMA_KEY_BLEND\n"
     "uniform highp float ChromaKeyBlend;\n"
+    "#endif\n"
     "varying highp vec2 oTexCoord;\n"
     "void main() {\n"
     "  gl_FragColor = Opacity * texture2D( Texture0, oTexCoord );\n"
-    "  if (UseChromaKey) {\n"
-    "    lowp float similarity = length(gl_FragColor.rgb - ChromaKeyColor.rgb);\n" // similarity: Exact equal color = 0.0
-    "    if (ChromaKeyBlend > 0.0) {\n" // Chroma key blending is enabled
-    "      gl_FragColor.a = max(0.0, min(1.0, (similarity - ChromaKeyThreshold) / (ChromaKeyThreshold * ChromaKeyBlend)));\n"
-    "    } else if (similarity < ChromaKeyThreshold) {\n" // Chroma key blending is disabled
-    "      discard;"
-    "    }\n"
+    "#ifdef CHROMA_KEY\n"
+    "  lowp float similarity = length(gl_FragColor.rgb - ChromaKeyColor.rgb);\n" // similarity: Exact equal color = 0.0
+    "#ifdef CHROMA_KEY_BLEND\n"
+    "  gl_FragColor.a = max(0.0, min(1.0, (similarity - ChromaKeyThreshold) / (ChromaKeyThreshold * ChromaKeyBlend)));\n"
+    "#else\n"
+    "  if (similarity < ChromaKeyThreshold) {\n"
+    "    discard;\n"
     "  }\n"
+    "#endif\n"
+    "#endif\n"
+    "#ifdef ALPHA_TEST\n"
     "  if (gl_FragColor.a < 0.001) {\n"
     "    discard;\n"
     "  }\n"
+    "#endif\n"
     "}\n";
 
-Shader::Shader() {
+Shader::Shader(int features) {
 
   static ovrProgramParm parms[] = {
       {"Texm", ovrProgramParmType::FLOAT_MATRIX4},       // PARM_TEXM
       {"Opacity", ovrProgramParmType::FLOAT},            // PARM_OPACITY
       {"Texture0", ovrProgramParmType::TEXTURE_SAMPLED}, // PARM_TEXTURE
-      {"UseChromaKey", ovrProgramParmType::INT},         // PARM_USE_CHROMA_KEY
       {"ChromaKeyColor", ovrProgramParmType::FLOAT_VECTOR3}, // PARM_CHROMA_KEY_COLOR
       {"ChromaKeyThreshold", ovrProgramParmType::FLOAT}, // PARM_CHROMA_KEY_THRESHOLD
       {"ChromaKeyBlend", ovrProgramParmType::FLOAT},     // PARM_CHROMA_KEY_BLEND
   };
 
-  program = GlProgram::Build(nullptr, VertexShaderSrc, ImageExternalDirectives,
-                             FragmentShaderSrc, parms,
-                             sizeof(parms) / sizeof(ovrProgramParm));
+  // Unused uniforms are not passed. They don't exist in compiled program.
+  int numParms = PARM_CHROMA_KEY_COLOR;
+  if (features & FEATURE_CHROMA_KEY_BLEND) {
+    numParms = PARM_CHROMA_KEY_BLEND + 1;
+  } else if (features & FEATURE_CHROMA_KEY) {
+    numParms = PARM_CHROMA_KEY_THRESHOLD + 1;
+  }
+
+  std::string directives;
+  if (features & FEATURE_EXTERNAL_TEXTURE) {
+    directives += ImageExternalDirectives;
+    directives += "#define EXTERNAL_TEXTURE\n";
+  }
+  if (features & FEATURE_ALPHA_TEST) {
+    directives += "#define ALPHA_TEST\n";
+  }
+  if (features & (FEATURE_CHROMA_KEY | FEATURE_CHROMA_KEY_BLEND)) {
+    directives += "#define CHROMA_KEY\n";
+  }
+  if (features & FEATURE_CHROMA_KEY_BLEND) {
+    directives += "#define CHROMA_KEY_BLEND\n";
+  }
+
+  program = GlProgram::Build(nullptr, VertexShaderSrc, directives.c_str(),
+                             FragmentShaderSrc, parms, numParms);
+  GlResourceRegistry::Get().AddProgram(program, this);
 }
 
-Shader::~Shader() { GlProgram::Free(program); }
+Shader::~Shader() {
+  GlResourceRegistry::Get().ReleaseProgram(program);
+  GlResourceRegistry::Get().OwnerDeleted(this);
+}
 
 GlProgram Shader::GetProgram() { return program; }
 }
\ No newline at end of file
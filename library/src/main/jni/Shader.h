@@ -23,18 +23,25 @@ using namespace OVR;
 namespace mgn {
 class Shader {
 public:
-  Shader();
+  // Feature bits of program variant
+  static const int FEATURE_EXTERNAL_TEXTURE = 1 << 0; // samplerExternalOES
+  static const int FEATURE_ALPHA_TEST = 1 << 1;       // Discard transparent
+  static const int FEATURE_CHROMA_KEY = 1 << 2;       // Discard key color
+  static const int FEATURE_CHROMA_KEY_BLEND = 1 << 3; // Blend key color
+  static const int FEATURE_COUNT = 1 << 4;
+
+  Shader(int features);
   ~Shader();
 
   GlProgram GetProgram();
 
+  // Variants without chroma key have only first three parms
   static const int PARM_TEXM = 0;
   static const int PARM_OPACITY = 1;
   static const int PARM_TEXTURE = 2;
-  static const int PARM_USE_CHROMA_KEY = 3;
-  static const int PARM_CHROMA_KEY_COLOR = 4;
-  static const int PARM_CHROMA_KEY_THRESHOLD = 5;
-  static const int PARM_CHROMA_KEY_BLEND = 6;
+  static const int PARM_CHROMA_KEY_COLOR = 3;
+  static const int PARM_CHROMA_KEY_THRESHOLD = 4;
+  static const int PARM_CHROMA_KEY_BLEND = 5;
 
 private:
   GlProgram program;
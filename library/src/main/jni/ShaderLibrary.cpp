@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "ShaderLibrary.h"
+
+namespace mgn {
+
+ShaderLibrary::ShaderLibrary() {
+  for (int i = 0; i < Shader::FEATURE_COUNT; i++) {
+    shaders[i] = nullptr;
+  }
+}
+
+ShaderLibrary::~ShaderLibrary() {
+  for (int i = 0; i < Shader::FEATURE_COUNT; i++) {
+    delete shaders[i];
+  }
+}
+
+GlProgram ShaderLibrary::GetProgram(int features) {
+  Shader *&shader = shaders[features & (Shader::FEATURE_COUNT - 1)];
+  if (shader == nullptr) {
+    shader = new Shader(features);
+  }
+  return shader->GetProgram();
+}
+}
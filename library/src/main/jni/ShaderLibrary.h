@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef SHADER_LIBRARY_H
+#define SHADER_LIBRARY_H
+
+#include "Shader.h"
+
+namespace mgn {
+// Cache of Shader variants keyed by feature bits.
+// Variants are built in GL thread on first use.
+class ShaderLibrary {
+public:
+  ShaderLibrary();
+  ~ShaderLibrary();
+
+  GlProgram GetProgram(int features);
+
+private:
+  Shader *shaders[Shader::FEATURE_COUNT];
+};
+}
+#endif
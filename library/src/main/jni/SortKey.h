@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 eje inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef SORT_KEY_H
+#define SORT_KEY_H
+
+#include "Material.h"
+#include <stdint.h>
+
+namespace mgn {
+
+/*
+ * Key to sort surfaces in ascending order. Surfaces with same key keep scene
+ * order.
+ *
+ * Bits 62-63: render queue.
+ * Opaque and alpha tested: bits 32-61 program and texture, bits 0-31 depth
+ * front to back to minimize state changes and overdraw.
+ * Transparent: bits 30-60 depth back to front for correct blending, bits 0-29
+ * program and texture.
+ *
+ * Depth is bits of positive float, which are ordered as integers.
+ */
+constexpr uint64_t SORT_KEY_STATE_MASK = 0x3fffffff;
+
+// Bits of FLT_MAX. Surface enclosing camera is the farthest.
+constexpr uint32_t SORT_KEY_FARTHEST_DEPTH = 0x7f7fffff;
+
+constexpr uint64_t MakeSortKeyState(uint32_t program, uint32_t texture) {
+  return (static_cast<uint64_t>(program & 0x3fff) << 16) | (texture & 0xffff);
+}
+
+constexpr uint64_t MakeSortKey(RenderQueue renderQueue, uint64_t state,
+                               uint32_t depthBits) {
+  return renderQueue == RENDER_QUEUE_TRANSPARENT
+             ? (static_cast<uint64_t>(renderQueue) << 62) |
+                   (static_cast<uint64_t>(~depthBits & 0x7fffffff) << 30) |
+                   (state & SORT_KEY_STATE_MASK)
+             : (static_cast<uint64_t>(renderQueue) << 62) |
+                   ((state & SORT_KEY_STATE_MASK) << 32) | depthBits;
+}
+
+constexpr RenderQueue GetSortKeyRenderQueue(uint64_t key) {
+  return static_cast<RenderQueue>(key >> 62);
+}
+
+static_assert(MakeSortKeyState(0xffffffff, 0xffffffff) == SORT_KEY_STATE_MASK,
+              "State must fit in mask");
+static_assert(GetSortKeyRenderQueue(MakeSortKey(
+                  RENDER_QUEUE_TRANSPARENT, SORT_KEY_STATE_MASK, 0)) ==
+                  RENDER_QUEUE_TRANSPARENT,
+              "State must not overflow into render queue");
+static_assert(GetSortKeyRenderQueue(
+                  MakeSortKey(RENDER_QUEUE_ALPHA_TESTED, SORT_KEY_STATE_MASK,
+                              SORT_KEY_FARTHEST_DEPTH)) ==
+                  RENDER_QUEUE_ALPHA_TESTED,
+              "Depth must not overflow into render queue");
+static_assert(MakeSortKey(RENDER_QUEUE_OPAQUE, SORT_KEY_STATE_MASK,
+                          SORT_KEY_FARTHEST_DEPTH) <
+                  MakeSortKey(RENDER_QUEUE_ALPHA_TESTED, 0, 0),
+              "Opaque must be drawn before alpha tested");
+static_assert(MakeSortKey(RENDER_QUEUE_ALPHA_TESTED, SORT_KEY_STATE_MASK,
+                          SORT_KEY_FARTHEST_DEPTH) <
+                  MakeSortKey(RENDER_QUEUE_TRANSPARENT, 0,
+                              SORT_KEY_FARTHEST_DEPTH),
+              "Alpha tested must be drawn before transparent");
+// 0x3f800000 is depth bits of 1.0f, 0x40000000 is 2.0f
+static_assert(MakeSortKey(RENDER_QUEUE_OPAQUE, 1, 0x3f800000) <
+                  MakeSortKey(RENDER_QUEUE_OPAQUE, 1, 0x40000000),
+              "Opaque must be drawn front to back");
+static_assert(MakeSortKey(RENDER_QUEUE_OPAQUE, 1, SORT_KEY_FARTHEST_DEPTH) <
+                  MakeSortKey(RENDER_QUEUE_OPAQUE, 2, 0),
+              "Opaque must be grouped by state before depth");
+static_assert(MakeSortKey(RENDER_QUEUE_TRANSPARENT, 1, 0x40000000) <
+                  MakeSortKey(RENDER_QUEUE_TRANSPARENT, 1, 0x3f800000),
+              "Transparent must be drawn back to front");
+static_assert(MakeSortKey(RENDER_QUEUE_TRANSPARENT, SORT_KEY_STATE_MASK,
+                          SORT_KEY_FARTHEST_DEPTH) <
+                  MakeSortKey(RENDER_QUEUE_TRANSPARENT, 0, 0x40000000),
+              "Transparent must be sorted by depth before state");
+}
+
+#endif
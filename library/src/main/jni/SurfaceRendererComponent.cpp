@@ -15,13 +15,20 @@
  */
 #include "SurfaceRendererComponent.h"
 #include "Shader.h"
+#include "AllocationTracker.h"
+#include "GlResourceRegistry.h"
 #include "Kernel/OVR_LogUtils.h"
 
 namespace mgn {
 
 SurfaceRendererComponent::SurfaceRendererComponent(JNIEnv *jni)
     : surfaceTexture(nullptr), surface(nullptr), opacity(1.0f),
-      useChromaKey(false), chromaKeyThreshold(0.1f), chromaKeyColor(0.0f) {
+      stereoMode(NORMAL), useChromaKey(false), chromaKeyThreshold(0.1f),
+      chromaKeyBlend(0.0f), chromaKeyColor(0.0f), ownsTexture(true),
+      textureBytes(0), opaque(false) {
+
+  AllocationTracker::Allocate(ALLOCATION_SURFACE_RENDERER_COMPONENT,
+                              sizeof(SurfaceRendererComponent));
 
   // Create texture
   GLuint texId;
@@ -38,9 +45,59 @@ SurfaceRendererComponent::SurfaceRendererComponent(JNIEnv *jni)
   surface = new JavaSurface(jni, surfaceTexture->GetJavaObject());
 
   texture = GlTexture(texId, GL_TEXTURE_EXTERNAL_OES, 0, 0);
+  GlResourceRegistry::Get().AddTexture(texId, this);
+  AllocationTracker::Allocate(ALLOCATION_TEXTURE, 0);
+
+  programMatrices[0] = Matrix4f();
+  programMatrices[1] = Matrix4f();
+
+  InitMaterial();
+}
+
+SurfaceRendererComponent::SurfaceRendererComponent()
+    : surfaceTexture(nullptr), surface(nullptr), opacity(1.0f),
+      stereoMode(NORMAL), useChromaKey(false), chromaKeyThreshold(0.1f),
+      chromaKeyBlend(0.0f), chromaKeyColor(0.0f), ownsTexture(true),
+      textureBytes(0), opaque(false) {
+
+  AllocationTracker::Allocate(ALLOCATION_SURFACE_RENDERER_COMPONENT,
+                              sizeof(SurfaceRendererComponent));
+
+  // Create texture. Image is uploaded from Java.
+  GLuint texId;
+  glGenTextures(1, &texId);
+  glBindTexture(GL_TEXTURE_2D, texId);
+  glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER,
+                  GL_LINEAR_MIPMAP_LINEAR);
+  glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+  glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+  glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+  glBindTexture(GL_TEXTURE_2D, 0);
+
+  texture = GlTexture(texId, GL_TEXTURE_2D, 0, 0);
+  GlResourceRegistry::Get().AddTexture(texId, this);
+  AllocationTracker::Allocate(ALLOCATION_TEXTURE, 0);
+
+  programMatrices[0] = Matrix4f();
+  programMatrices[1] = Matrix4f();
+
+  InitMaterial();
+}
+
+SurfaceRendererComponent::SurfaceRendererComponent(
+    const GlTexture &sharedTexture)
+    : surfaceTexture(nullptr), surface(nullptr), texture(sharedTexture),
+      opacity(1.0f), stereoMode(NORMAL), useChromaKey(false),
+      chromaKeyThreshold(0.1f), chromaKeyBlend(0.0f), chromaKeyColor(0.0f),
+      ownsTexture(false), textureBytes(0), opaque(false) {
+
+  AllocationTracker::Allocate(ALLOCATION_SURFACE_RENDERER_COMPONENT,
+                              sizeof(SurfaceRendererComponent));
 
   programMatrices[0] = Matrix4f();
   programMatrices[1] = Matrix4f();
+
+  InitMaterial();
 }
 
 SurfaceRendererComponent::~SurfaceRendererComponent() {
@@ -48,24 +105,62 @@ SurfaceRendererComponent::~SurfaceRendererComponent() {
 
   delete surfaceTexture;
   delete surface;
+
+  // Texture is deleted in GL thread
+  if (ownsTexture) {
+    GlResourceRegistry::Get().ReleaseTexture(texture.texture);
+    AllocationTracker::Free(ALLOCATION_TEXTURE, textureBytes);
+  }
+
+  AllocationTracker::Free(ALLOCATION_SURFACE_RENDERER_COMPONENT,
+                          sizeof(SurfaceRendererComponent));
 }
 
 jobject SurfaceRendererComponent::GetSurfaceTexture() {
-  return surfaceTexture->GetJavaObject();
+  return surfaceTexture != nullptr ? surfaceTexture->GetJavaObject() : nullptr;
 }
 
 jobject SurfaceRendererComponent::GetSurface() {
-  return surface->GetJavaObject();
+  return surface != nullptr ? surface->GetJavaObject() : nullptr;
 }
 
 GlTexture &SurfaceRendererComponent::GetTexture() { return texture; }
+
+void SurfaceRendererComponent::SetTextureRegion(const float x, const float y,
+                                                const float width,
+                                                const float height) {
+  regionMatrix = Matrix4f( //
+      width, 0.0f, 0.0f, x, //
+      0.0f, height, 0.0f, y, //
+      0.0f, 0.0f, 1.0f, 0.0f, //
+      0.0f, 0.0f, 0.0f, 1.0f);
+
+  // Apply to texture matrices
+  SetStereoMode(stereoMode);
+}
+
+void SurfaceRendererComponent::SetTextureSize(const int width,
+                                              const int height) {
+  texture.Width = width;
+  texture.Height = height;
+
+  // Estimate as RGBA8888. Mipmaps add one third.
+  int64_t bytes = (int64_t)width * height * 4;
+  if (texture.target == GL_TEXTURE_2D) {
+    bytes += bytes / 3;
+  }
+  AllocationTracker::Resize(ALLOCATION_TEXTURE, bytes - textureBytes);
+  textureBytes = bytes;
+}
 void SurfaceRendererComponent::SetOpacity(float opacity) {
   this->opacity = opacity;
+  UpdateProgramFeatures();
 }
 float &SurfaceRendererComponent::GetOpacity() { return opacity; }
 
 void SurfaceRendererComponent::SetUseChromaKey(bool useChromaKey) {
   this->useChromaKey = useChromaKey ? 1 : 0;
+  UpdateProgramFeatures();
 }
 
 int &SurfaceRendererComponent::GetUseChromaKey() {
@@ -82,6 +177,7 @@ float &SurfaceRendererComponent::GetChromaKeyThreshold() {
 
 void SurfaceRendererComponent::SetChromaKeyBlend(float chromaKeyBlend) {
   this->chromaKeyBlend = chromaKeyBlend;
+  UpdateProgramFeatures();
 }
 
 float &SurfaceRendererComponent::GetChromaKeyBlend() {
@@ -137,6 +233,77 @@ void SurfaceRendererComponent::SetStereoMode(StereoMode stereoMode) {
     programMatrices[1] = texM_rightHalf;
     break;
   }
+
+  // Map to region of shared texture
+  programMatrices[0] = regionMatrix * programMatrices[0];
+  programMatrices[1] = regionMatrix * programMatrices[1];
+}
+
+void SurfaceRendererComponent::SetOpaque(bool opaque) {
+  this->opaque = opaque;
+  UpdateProgramFeatures();
+}
+
+Material &SurfaceRendererComponent::GetMaterial() { return material; }
+
+void SurfaceRendererComponent::InitMaterial() {
+  material.SetUniform(Shader::PARM_TEXM, &programMatrices[0], 2);
+  material.SetUniform(Shader::PARM_OPACITY, &opacity);
+  material.SetUniform(Shader::PARM_TEXTURE, &texture);
+  material.SetUniform(Shader::PARM_CHROMA_KEY_COLOR, &chromaKeyColor);
+  material.SetUniform(Shader::PARM_CHROMA_KEY_THRESHOLD, &chromaKeyThreshold);
+  material.SetUniform(Shader::PARM_CHROMA_KEY_BLEND, &chromaKeyBlend);
+  UpdateProgramFeatures();
+}
+
+// Hard chroma key discards pixels but never blends
+static constexpr RenderQueue SelectRenderQueue(bool opaque, float opacity,
+                                               bool useChromaKey,
+                                               float chromaKeyBlend) {
+  return !opaque || opacity < 1.0f || (useChromaKey && chromaKeyBlend > 0.0f)
+             ? RENDER_QUEUE_TRANSPARENT
+             : useChromaKey ? RENDER_QUEUE_ALPHA_TESTED : RENDER_QUEUE_OPAQUE;
+}
+
+static_assert(SelectRenderQueue(true, 1.0f, false, 0.0f) ==
+                  RENDER_QUEUE_OPAQUE,
+              "Opaque surface");
+static_assert(SelectRenderQueue(false, 1.0f, false, 0.0f) ==
+                  RENDER_QUEUE_TRANSPARENT,
+              "Surface may have transparent pixels");
+static_assert(SelectRenderQueue(true, 0.5f, false, 0.0f) ==
+                  RENDER_QUEUE_TRANSPARENT,
+              "Translucent surface");
+static_assert(SelectRenderQueue(true, 1.0f, true, 0.0f) ==
+                  RENDER_QUEUE_ALPHA_TESTED,
+              "Hard chroma key");
+static_assert(SelectRenderQueue(true, 1.0f, true, 0.1f) ==
+                  RENDER_QUEUE_TRANSPARENT,
+              "Blended chroma key");
+
+void SurfaceRendererComponent::UpdateProgramFeatures() {
+  int features = 0;
+  if (texture.target == GL_TEXTURE_EXTERNAL_OES) {
+    features |= Shader::FEATURE_EXTERNAL_TEXTURE;
+  }
+
+  // Transparent pixels must not write depth
+  if (!opaque || opacity < 1.0f) {
+    features |= Shader::FEATURE_ALPHA_TEST;
+  }
+
+  if (useChromaKey) {
+    if (chromaKeyBlend > 0.0f) {
+      features |= Shader::FEATURE_CHROMA_KEY_BLEND | Shader::FEATURE_ALPHA_TEST;
+    } else {
+      features |= Shader::FEATURE_CHROMA_KEY;
+    }
+  }
+
+  material.SetProgramFeatures(features);
+
+  material.SetRenderQueue(
+      SelectRenderQueue(opaque, opacity, useChromaKey, chromaKeyBlend));
 }
 
 SurfaceRendererComponent::StereoMode SurfaceRendererComponent::GetStereoMode() {
@@ -155,6 +322,38 @@ jlong Java_org_meganekkovr_SurfaceRendererComponent_newInstance(JNIEnv *jni,
   return reinterpret_cast<jlong>(new mgn::SurfaceRendererComponent(jni));
 }
 
+jlong Java_org_meganekkovr_SurfaceRendererComponent_newStaticInstance(
+    JNIEnv *jni, jobject thiz) {
+
+  return reinterpret_cast<jlong>(new mgn::SurfaceRendererComponent());
+}
+
+jint Java_org_meganekkovr_SurfaceRendererComponent_getTextureId(
+    JNIEnv *jni, jobject thiz, jlong nativePtr) {
+
+  mgn::SurfaceRendererComponent *sur =
+      reinterpret_cast<mgn::SurfaceRendererComponent *>(nativePtr);
+  return sur->GetTexture().texture;
+}
+
+jlong Java_org_meganekkovr_SurfaceRendererComponent_newRegionInstance(
+    JNIEnv *jni, jobject thiz, jlong atlasPtr) {
+
+  mgn::SurfaceRendererComponent *atlas =
+      reinterpret_cast<mgn::SurfaceRendererComponent *>(atlasPtr);
+  return reinterpret_cast<jlong>(
+      new mgn::SurfaceRendererComponent(atlas->GetTexture()));
+}
+
+void Java_org_meganekkovr_SurfaceRendererComponent_setTextureRegion(
+    JNIEnv *jni, jobject thiz, jlong nativePtr, jfloat x, jfloat y,
+    jfloat width, jfloat height) {
+
+  mgn::SurfaceRendererComponent *sur =
+      reinterpret_cast<mgn::SurfaceRendererComponent *>(nativePtr);
+  sur->SetTextureRegion(x, y, width, height);
+}
+
 jobject Java_org_meganekkovr_SurfaceRendererComponent_getSurfaceTexture(
     JNIEnv *jni, jobject thiz, jlong nativePtr) {
 
@@ -180,44 +379,32 @@ void Java_org_meganekkovr_SurfaceRendererComponent_setEntityTexture(
   mgn::SurfaceRendererComponent *sur =
       reinterpret_cast<mgn::SurfaceRendererComponent *>(nativePtr);
 
-  ovrSurfaceDef *surfaceDef = entity->GetOrCreateSurfaceDef();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_TEXM].Data =
-      &sur->programMatrices[0];
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_TEXM].Count = 2;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_OPACITY].Data =
-      &sur->GetOpacity();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_TEXTURE].Data =
-      &sur->GetTexture();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_USE_CHROMA_KEY].Data =
-      &sur->GetUseChromaKey();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_COLOR].Data =
-      &sur->GetChromaKeyColor();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_THRESHOLD].Data =
-      &sur->GetChromaKeyThreshold();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_BLEND].Data =
-      &sur->GetChromaKeyBlend();
+  // Applied to surfaceDef when it is rendered
+  entity->GetOrCreateSurfaceDef();
+  entity->SetMaterial(&sur->GetMaterial());
 }
 
 void Java_org_meganekkovr_SurfaceRendererComponent_removeEntityTexture(
     JNIEnv *jni, jobject thiz, jlong entityPtr, jlong nativePtr) {
 
   mgn::Entity *entity = reinterpret_cast<mgn::Entity *>(entityPtr);
+  entity->SetMaterial(nullptr);
+}
+
+void Java_org_meganekkovr_SurfaceRendererComponent_setOpaque(
+    JNIEnv *jni, jobject thiz, jlong nativePtr, jboolean opaque) {
 
-  ovrSurfaceDef *surfaceDef = entity->GetOrCreateSurfaceDef();
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_TEXM].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_OPACITY].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_TEXTURE].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_USE_CHROMA_KEY].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_COLOR].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_THRESHOLD].Data =
-      nullptr;
-  surfaceDef->graphicsCommand.UniformData[mgn::Shader::PARM_CHROMA_KEY_BLEND].Data =
-      nullptr;
+  mgn::SurfaceRendererComponent *sur =
+      reinterpret_cast<mgn::SurfaceRendererComponent *>(nativePtr);
+  sur->SetOpaque(opaque);
+}
+
+void Java_org_meganekkovr_SurfaceRendererComponent_setTextureSize(
+    JNIEnv *jni, jobject thiz, jlong nativePtr, jint width, jint height) {
+
+  mgn::SurfaceRendererComponent *sur =
+      reinterpret_cast<mgn::SurfaceRendererComponent *>(nativePtr);
+  sur->SetTextureSize(width, height);
 }
 
 void Java_org_meganekkovr_SurfaceRendererComponent_setOpacity(JNIEnv *jni,
@@ -41,11 +41,19 @@ public:
   };
 
   SurfaceRendererComponent(JNIEnv *jni);
+  // Renders static image in GL_TEXTURE_2D. It has no SurfaceTexture.
+  SurfaceRendererComponent();
+  // Renders a region of shared texture. It has no SurfaceTexture.
+  SurfaceRendererComponent(const GlTexture &sharedTexture);
   ~SurfaceRendererComponent();
 
   jobject GetSurfaceTexture();
   jobject GetSurface();
   GlTexture &GetTexture();
+  void SetTextureSize(const int width, const int height);
+  // Normalized region of texture to render.
+  void SetTextureRegion(const float x, const float y, const float width,
+                        const float height);
   void SetOpacity(float opacity);
   float &GetOpacity();
 
@@ -63,6 +71,11 @@ public:
 
   void SetStereoMode(StereoMode stereoMode);
   StereoMode GetStereoMode();
+
+  // Content has no transparent pixels
+  void SetOpaque(bool opaque);
+
+  Material &GetMaterial();
   Matrix4f programMatrices[2]; // 0: For left eye, 1: For right eye
 private:
   JavaSurfaceTexture *surfaceTexture;
@@ -74,6 +87,14 @@ private:
   float chromaKeyThreshold;
   float chromaKeyBlend;
   Vector3f chromaKeyColor;
+  bool ownsTexture;
+  int64_t textureBytes;
+  Matrix4f regionMatrix;
+  bool opaque;
+  Material material;
+
+  void InitMaterial();
+  void UpdateProgramFeatures();
 };
 
 static Matrix4f texM_topHalf = Matrix4f( //
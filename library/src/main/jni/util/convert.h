@@ -126,6 +126,18 @@ intArrayToTriangleIndex(JNIEnv *jni, jintArray array) {
   return result;
 }
 
+/**
+ * Column-major 16 floats to Matrix4f
+ */
+static inline OVR::Matrix4f floatsToMatrix4f(const jfloat *elements) {
+
+  return OVR::Matrix4f(                                     //
+      elements[0], elements[4], elements[8], elements[12],  //
+      elements[1], elements[5], elements[9], elements[13],  //
+      elements[2], elements[6], elements[10], elements[14], //
+      elements[3], elements[7], elements[11], elements[15]);
+}
+
 /**
  * Java float[] to Matrix4f
  */
@@ -134,13 +146,9 @@ static inline OVR::Matrix4f floatArrayToMatrix4f(JNIEnv *jni,
 
   jfloat *elements = jni->GetFloatArrayElements(array, 0);
 
-  Matrix4f result(                                          //
-      elements[0], elements[4], elements[8], elements[12],  //
-      elements[1], elements[5], elements[9], elements[13],  //
-      elements[2], elements[6], elements[10], elements[14], //
-      elements[3], elements[7], elements[11], elements[15]);
+  Matrix4f result = floatsToMatrix4f(elements);
 
-  jni->ReleaseFloatArrayElements(array, elements, 0);
+  jni->ReleaseFloatArrayElements(array, elements, JNI_ABORT);
 
   return result;
 }
@@ -0,0 +1,55 @@
+package org.meganekkovr
+
+import org.junit.Assume
+
+/**
+ * Minimal benchmark harness for JVM unit tests.
+ * Benchmarks are skipped unless Gradle runs with `-Pbenchmark`.
+ *
+ * ```
+ * ./gradlew :library:testDebugUnitTest -Pbenchmark
+ * ```
+ *
+ * Results are printed to standard output. Numbers are measured on host JVM,
+ * so compare them relatively rather than as device timings.
+ */
+internal object Benchmark {
+
+    private const val WARMUP_ROUNDS = 5
+    private const val ROUNDS = 11
+
+    val isEnabled = System.getProperty("meganekko.benchmark") == "true"
+
+    /**
+     * Skip calling test unless benchmarks are enabled.
+     */
+    fun assumeEnabled() {
+        Assume.assumeTrue("Benchmarks run only with -Pbenchmark", isEnabled)
+    }
+
+    /**
+     * Measure [block] in several rounds after warm up.
+     *
+     * @param iterations Calls of [block] per round.
+     * @param block      Code to measure.
+     * @return Median nanoseconds per call.
+     */
+    fun measure(iterations: Int, block: () -> Unit): Long {
+        for (round in 0 until WARMUP_ROUNDS) {
+            for (i in 0 until iterations) block()
+        }
+
+        val results = LongArray(ROUNDS)
+        for (round in 0 until ROUNDS) {
+            val start = System.nanoTime()
+            for (i in 0 until iterations) block()
+            results[round] = (System.nanoTime() - start) / iterations
+        }
+        results.sort()
+        return results[ROUNDS / 2]
+    }
+
+    fun report(name: String, message: String) {
+        println("[benchmark] $name: $message")
+    }
+}
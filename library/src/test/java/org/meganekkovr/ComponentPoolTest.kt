@@ -0,0 +1,136 @@
+package org.meganekkovr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.fail
+import org.junit.Test
+
+class ComponentPoolTest {
+
+    private class TestComponent : Component()
+
+    private val pool = ComponentPool(TestComponent::class.java)
+
+    private fun addComponents(count: Int): List<TestComponent> {
+        val components = List(count) { TestComponent() }
+        components.forEach { pool.add(it) }
+        return components
+    }
+
+    private fun assertIndicesConsistent() {
+        for (i in 0 until pool.size) {
+            assertEquals(i, pool[i].poolIndex)
+        }
+    }
+
+    @Test
+    fun addAssignsIndexInOrder() {
+        val components = addComponents(3)
+
+        assertEquals(3, pool.size)
+        for (i in 0 until 3) {
+            assertSame(components[i], pool[i])
+            assertEquals(i, components[i].poolIndex)
+        }
+    }
+
+    @Test
+    fun addTwiceIsIgnored() {
+        val component = addComponents(1)[0]
+
+        pool.add(component)
+
+        assertEquals(1, pool.size)
+    }
+
+    @Test
+    fun removeSwapsLastIntoPlace() {
+        val components = addComponents(4)
+
+        pool.remove(components[1])
+
+        assertEquals(3, pool.size)
+        assertSame(components[3], pool[1])
+        assertEquals(1, components[3].poolIndex)
+        assertEquals(-1, components[1].poolIndex)
+        assertIndicesConsistent()
+    }
+
+    @Test
+    fun removeLast() {
+        val components = addComponents(2)
+
+        pool.remove(components[1])
+
+        assertEquals(1, pool.size)
+        assertSame(components[0], pool[0])
+        assertEquals(-1, components[1].poolIndex)
+    }
+
+    @Test
+    fun removeNotPooledIsIgnored() {
+        addComponents(2)
+        val other = TestComponent()
+
+        pool.remove(other)
+
+        assertEquals(2, pool.size)
+        assertIndicesConsistent()
+    }
+
+    @Test
+    fun removeFromOtherPoolIsIgnored() {
+        addComponents(2)
+        val otherPool = ComponentPool(TestComponent::class.java)
+        val other = TestComponent()
+        otherPool.add(other)
+        otherPool.add(TestComponent())
+
+        // Same index, different pool
+        pool.remove(other)
+
+        assertEquals(2, pool.size)
+        assertEquals(0, other.poolIndex)
+    }
+
+    @Test
+    fun growKeepsComponents() {
+        val components = addComponents(100)
+
+        assertEquals(100, pool.size)
+        for (i in 0 until 100) assertSame(components[i], pool[i])
+    }
+
+    @Test
+    fun removeAllInRandomOrder() {
+        val components = addComponents(50).shuffled(java.util.Random(1))
+
+        for ((removed, component) in components.withIndex()) {
+            pool.remove(component)
+            assertEquals(50 - removed - 1, pool.size)
+            assertEquals(-1, component.poolIndex)
+            assertIndicesConsistent()
+        }
+    }
+
+    @Test
+    fun clearResetsIndices() {
+        val components = addComponents(3)
+
+        pool.clear()
+
+        assertEquals(0, pool.size)
+        components.forEach { assertEquals(-1, it.poolIndex) }
+    }
+
+    @Test
+    fun getOutOfRangeThrows() {
+        addComponents(1)
+        try {
+            pool[1]
+            fail()
+        } catch (e: IndexOutOfBoundsException) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.meganekkovr
+
+import org.junit.Test
+
+/**
+ * Iteration throughput of 10k components of one type.
+ * Compares walking Entity tree and each Entity's component map, as scene update did
+ * before [ComponentSystem], against one loop over [ComponentPool].
+ */
+class ComponentSystemBenchmark {
+
+    private class CounterComponent : Component() {
+        var count = 0
+
+        override fun update(frame: FrameInput) {
+            count++
+        }
+    }
+
+    /**
+     * Entity as before [ComponentSystem]. Components are held in a map.
+     */
+    private class Node {
+        val components = mutableMapOf<Class<out Component>, Component>()
+        val children = ArrayList<Node>()
+
+        fun update(frame: FrameInput) {
+            components.values.forEach { it.update(frame) }
+            children.forEach { it.update(frame) }
+        }
+    }
+
+    @Test
+    fun iterate10kComponents() {
+        Benchmark.assumeEnabled()
+
+        val frame = FrameInput(0)
+        val pool = ComponentPool(CounterComponent::class.java)
+
+        // 100 panels with 100 items each
+        val root = Node()
+        for (i in 0 until 100) {
+            val panel = Node()
+            root.children.add(panel)
+            for (j in 0 until 100) {
+                val item = Node()
+                val component = CounterComponent()
+                item.components[CounterComponent::class.java] = component
+                panel.children.add(item)
+                pool.add(component)
+            }
+        }
+
+        val tree = Benchmark.measure(100) { root.update(frame) }
+        val packed = Benchmark.measure(100) { pool.forEach { it.update(frame) } }
+
+        Benchmark.report("ComponentSystemBenchmark", "${pool.size} components, tree walk ${tree / 1000} us/frame, " +
+                "ComponentPool ${packed / 1000} us/frame (x%.2f)".format(tree.toDouble() / packed))
+    }
+}
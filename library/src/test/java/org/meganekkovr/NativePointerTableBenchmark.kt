@@ -0,0 +1,68 @@
+package org.meganekkovr
+
+import org.junit.Test
+import java.lang.ref.WeakReference
+
+/**
+ * Cost of creating [NativePointer] while many native objects are alive.
+ * Compares [NativePointerTable] against linear scan of weak references,
+ * as [NativePointer.getInstance] did before the table.
+ */
+class NativePointerTableBenchmark {
+
+    private var nextPtr = 0x20000000L
+
+    /**
+     * Instance set as before [NativePointerTable].
+     */
+    private class LinearSet {
+        private val instances = mutableSetOf<WeakReference<Any>>()
+        private val pointers = HashMap<WeakReference<Any>, Long>()
+
+        fun getOrCreate(ptr: Long): Any {
+            for (ref in instances) {
+                val instance = ref.get() ?: continue
+                if (pointers[ref] == ptr) return instance
+            }
+            val instance = Any()
+            val ref = WeakReference(instance)
+            instances.add(ref)
+            pointers[ref] = ptr
+            return instance
+        }
+    }
+
+    @Test
+    fun creationCostByLiveCount() {
+        Benchmark.assumeEnabled()
+
+        val live = ArrayList<NativePointer>()
+        val liveLinear = ArrayList<Any>()
+        val linear = LinearSet()
+
+        for (target in intArrayOf(0, 1000, 10000, 100000)) {
+            while (live.size < target) {
+                live.add(NativePointerTable.getOrCreate(nextPtr))
+                liveLinear.add(linear.getOrCreate(nextPtr))
+                nextPtr += 16
+            }
+
+            // Create and remove one. Table size stays at target.
+            val table = Benchmark.measure(1000) {
+                val instance = NativePointerTable.getOrCreate(nextPtr)
+                nextPtr += 16
+                NativePointerTable.remove(instance.reference)
+            }
+
+            // Linear scan is too slow to repeat many times with large set
+            val scan = Benchmark.measure(if (target >= 10000) 2 else 100) {
+                liveLinear.add(linear.getOrCreate(nextPtr))
+                nextPtr += 16
+            }
+
+            Benchmark.report("NativePointerTableBenchmark", "$target live: table $table ns, linear scan $scan ns")
+        }
+
+        live.forEach { NativePointerTable.remove(it.reference) }
+    }
+}
@@ -0,0 +1,173 @@
+package org.meganekkovr
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class NativePointerTableTest {
+
+    // Strong references so that entries are not garbage collected while testing
+    private val instances = ArrayList<NativePointer>()
+
+    private var nextPtr = 0x10000000L
+
+    @After
+    fun removeEntries() {
+        instances.forEach { NativePointerTable.remove(it.reference) }
+        instances.clear()
+    }
+
+    private fun create(ptr: Long): NativePointer {
+        return NativePointerTable.getOrCreate(ptr).also { instances.add(it) }
+    }
+
+    private fun createNew(): NativePointer {
+        val ptr = nextPtr
+        nextPtr += 16
+        return create(ptr)
+    }
+
+    private fun remove(instance: NativePointer) {
+        NativePointerTable.remove(instance.reference)
+        instances.remove(instance)
+    }
+
+    /**
+     * @return [count] new pointer values whose home slot is [home].
+     */
+    private fun pointersAt(home: Int, count: Int): List<Long> {
+        val ptrs = ArrayList<Long>()
+        while (ptrs.size < count) {
+            val ptr = nextPtr
+            nextPtr += 16
+            if (NativePointerTable.indexOf(ptr) == home) ptrs.add(ptr)
+        }
+        return ptrs
+    }
+
+    private fun assertFound(instance: NativePointer) {
+        assertSame(instance, NativePointerTable.getOrCreate(instance.get()))
+    }
+
+    @Test
+    fun sameInstanceForSamePointer() {
+        val size = NativePointerTable.size
+        val instance = createNew()
+
+        assertSame(instance, NativePointerTable.getOrCreate(instance.get()))
+        assertEquals(size + 1, NativePointerTable.size)
+    }
+
+    @Test
+    fun removeThenCreateNewInstance() {
+        val size = NativePointerTable.size
+        val instance = createNew()
+
+        remove(instance)
+
+        assertEquals(size, NativePointerTable.size)
+        assertNotSame(instance, create(instance.get()))
+    }
+
+    @Test
+    fun removeReplacedReferenceIsIgnored() {
+        val instance = createNew()
+        val oldReference = instance.reference
+
+        // Garbage collected, but not removed from table yet
+        oldReference.clear()
+        val replaced = create(instance.get())
+        val size = NativePointerTable.size
+        NativePointerTable.remove(oldReference)
+
+        assertEquals(size, NativePointerTable.size)
+        assertFound(replaced)
+    }
+
+    @Test
+    fun clearedEntryIsTakenOverAndDisowned() {
+        val instance = createNew()
+        val oldReference = instance.reference
+        val size = NativePointerTable.size
+
+        oldReference.clear()
+        val replaced = create(instance.get())
+
+        assertNotSame(instance, replaced)
+        assertEquals(size, NativePointerTable.size)
+
+        // Disowned reference must not delete native object. This would call native delete otherwise.
+        oldReference.deleteNow()
+    }
+
+    @Test
+    fun dependenciesAreTakenOverByNewInstance() {
+        val dependency = createNew()
+        val instance = createNew()
+        instance.addDependency(dependency)
+        val oldReference = instance.reference
+
+        oldReference.clear()
+        val replaced = create(instance.get())
+
+        assertEquals(0, oldReference.dependencyCount)
+        assertEquals(1, replaced.reference.dependencyCount)
+
+        // Disowned reference must not release dependency. This would call native delete otherwise.
+        oldReference.deleteNow()
+        assertFalse(dependency.isReleased)
+    }
+
+    @Test
+    fun removeHeadOfCollisionChain() {
+        val home = NativePointerTable.capacity / 2
+        val chain = pointersAt(home, 4).map { create(it) }
+
+        remove(chain[0])
+
+        chain.drop(1).forEach { assertFound(it) }
+    }
+
+    @Test
+    fun removeMiddleOfInterleavedChains() {
+        val home = NativePointerTable.capacity / 4
+        val a = pointersAt(home, 2).map { create(it) }
+        val b = pointersAt(home + 1, 2).map { create(it) }
+
+        // Slots: a0 a1 b0 b1. Removing a1 shifts b0 and b1 back by one.
+        remove(a[1])
+
+        assertFound(a[0])
+        b.forEach { assertFound(it) }
+    }
+
+    @Test
+    fun chainWrapsAroundEndOfTable() {
+        val last = NativePointerTable.capacity - 1
+        val wrapped = pointersAt(last, 3).map { create(it) }
+        val atZero = pointersAt(0, 2).map { create(it) }
+
+        // Slots: last -> w0, 0 -> w1, 1 -> w2, 2 -> z0, 3 -> z1
+        remove(wrapped[0])
+        wrapped.drop(1).forEach { assertFound(it) }
+        atZero.forEach { assertFound(it) }
+
+        remove(atZero[0])
+        wrapped.drop(1).forEach { assertFound(it) }
+        assertFound(atZero[1])
+    }
+
+    @Test
+    fun growKeepsEntries() {
+        val capacity = NativePointerTable.capacity
+        val created = (0 until capacity).map { create(nextPtr + it * 16L) }
+        nextPtr += capacity * 16L
+
+        assertTrue(NativePointerTable.capacity > capacity)
+        created.forEach { assertFound(it) }
+    }
+}
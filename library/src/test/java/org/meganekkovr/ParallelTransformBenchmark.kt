@@ -0,0 +1,99 @@
+package org.meganekkovr
+
+import org.junit.Test
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Finds subtree size where parallel transform pass of [TransformScheduler] beats serial one.
+ * [TransformScheduler.parallelThreshold] default is derived from this.
+ *
+ * Each node computes local and world matrix in [TransformStore], which is same work as
+ * [Entity.updateTransform]. On single core host, parallel time is estimated from measured
+ * fork-join overhead and [ASSUMED_CORES].
+ */
+class ParallelTransformBenchmark {
+
+    private class Node(val slot: Int, val parentSlot: Int) {
+        val children = ArrayList<Node>()
+        var subtreeSize = 1
+    }
+
+    private object NodeWalk : ParallelTreeWalk<Node>() {
+        override fun childCount(node: Node) = node.children.size
+        override fun child(node: Node, index: Int) = node.children[index]
+        override fun subtreeSize(node: Node) = node.subtreeSize
+
+        override fun visit(node: Node) {
+            TransformStore.updateLocalMatrix(node.slot)
+            TransformStore.updateWorldMatrix(node.slot, node.parentSlot)
+        }
+    }
+
+    private val slots = ArrayList<Int>()
+
+    private fun node(parent: Node?): Node {
+        val slot = TransformStore.allocate(slots)
+        slots.add(slot)
+        TransformStore.setPosition(slot, 0f, 1f, -2f)
+        val node = Node(slot, parent?.slot ?: -1)
+        if (parent != null) parent.children.add(node)
+        return node
+    }
+
+    /**
+     * Root with groups of 1 + 15 leaves, like panels with their contents.
+     */
+    private fun buildTree(size: Int): Node {
+        val root = node(null)
+        for (g in 0 until (size - 1) / GROUP_SIZE) {
+            val group = node(root)
+            for (i in 1 until GROUP_SIZE) node(group)
+            group.subtreeSize = GROUP_SIZE
+            root.subtreeSize += GROUP_SIZE
+        }
+        return root
+    }
+
+    @Test
+    fun findCrossover() {
+        Benchmark.assumeEnabled()
+
+        val cores = Runtime.getRuntime().availableProcessors()
+        val pool = ForkJoinPool(cores)
+        var crossover = -1
+
+        var size = 256
+        while (size <= 65536) {
+            val root = buildTree(size)
+
+            synchronized(TransformStore) {
+                val serial = Benchmark.measure(50) { NodeWalk.walk(root) }
+                val parallel = Benchmark.measure(50) { NodeWalk.walkParallel(pool, root, size) }
+
+                // Single core can't run in parallel. Estimate from overhead.
+                val estimated = if (cores > 1) parallel else serial / ASSUMED_CORES + Math.max(parallel - serial, 0)
+                if (estimated < serial) {
+                    if (crossover < 0) crossover = size
+                } else {
+                    crossover = -1
+                }
+
+                Benchmark.report("ParallelTransformBenchmark", "$size nodes: serial ${serial / 1000} us, " +
+                        (if (cores > 1) "parallel" else "estimated parallel on $ASSUMED_CORES cores") +
+                        " ${estimated / 1000} us")
+            }
+
+            slots.forEach(TransformStore::release)
+            slots.clear()
+            size *= 2
+        }
+
+        Benchmark.report("ParallelTransformBenchmark", "$cores cores, crossover at " +
+                (if (crossover > 0) "$crossover nodes" else "none"))
+    }
+
+    companion object {
+        private const val GROUP_SIZE = 16
+        private const val ASSUMED_CORES = 4
+    }
+}
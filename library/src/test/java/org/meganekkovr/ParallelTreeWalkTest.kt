@@ -0,0 +1,76 @@
+package org.meganekkovr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelTreeWalkTest {
+
+    private class Node(val parent: Node?) {
+        val children = ArrayList<Node>()
+        var subtreeSize = 1
+    }
+
+    private class RecordingWalk : ParallelTreeWalk<Node>() {
+        private val clock = AtomicInteger()
+        val visitedAt = ConcurrentHashMap<Node, Int>()
+
+        override fun childCount(node: Node) = node.children.size
+        override fun child(node: Node, index: Int) = node.children[index]
+        override fun subtreeSize(node: Node) = node.subtreeSize
+
+        override fun visit(node: Node) {
+            val previous = visitedAt.put(node, clock.incrementAndGet())
+            assertEquals(null, previous)
+        }
+    }
+
+    private fun build(parent: Node?, fanouts: IntArray, level: Int, all: MutableList<Node>): Node {
+        val node = Node(parent)
+        all.add(node)
+        if (level < fanouts.size) {
+            for (i in 0 until fanouts[level]) {
+                val child = build(node, fanouts, level + 1, all)
+                node.children.add(child)
+                node.subtreeSize += child.subtreeSize
+            }
+        }
+        return node
+    }
+
+    private fun assertVisitedParentFirst(walk: RecordingWalk, all: List<Node>) {
+        assertEquals(all.size, walk.visitedAt.size)
+        for (node in all) {
+            val parent = node.parent ?: continue
+            assertTrue(walk.visitedAt[parent]!! < walk.visitedAt[node]!!)
+        }
+    }
+
+    @Test
+    fun walkVisitsEveryNodeAfterParent() {
+        val all = ArrayList<Node>()
+        val root = build(null, intArrayOf(3, 4, 5), 0, all)
+
+        val walk = RecordingWalk()
+        walk.walk(root)
+
+        assertVisitedParentFirst(walk, all)
+    }
+
+    @Test
+    fun walkParallelVisitsEveryNodeAfterParent() {
+        val all = ArrayList<Node>()
+
+        // Mix of large subtrees which are split and small ones which are batched
+        val root = build(null, intArrayOf(4, 30, 20), 0, all)
+        root.children.add(build(root, intArrayOf(2), 0, all).also { root.subtreeSize += it.subtreeSize })
+
+        val walk = RecordingWalk()
+        walk.walkParallel(ForkJoinPool(4), root, 256)
+
+        assertVisitedParentFirst(walk, all)
+    }
+}
@@ -0,0 +1,113 @@
+package org.meganekkovr
+
+import org.joml.Matrix4f
+import org.joml.Quaternionf
+import org.joml.Vector3f
+import org.junit.Test
+
+/**
+ * Per-frame transform update of a scene whose every node rotates.
+ * Compares object-per-Entity JOML matrices, as Entity used before [TransformStore],
+ * against packed [TransformStore] slots.
+ */
+class TransformBenchmark {
+
+    // 10 x 10 x 100 nodes
+    private val fanouts = intArrayOf(10, 10, 100)
+
+    /**
+     * Object-per-Entity transform as before [TransformStore].
+     */
+    private class JomlNode(val parent: JomlNode?) {
+        val position = Vector3f()
+        val rotation = Quaternionf()
+        val scale = Vector3f(1f)
+        val localMatrix = Matrix4f()
+        val worldModelMatrix = Matrix4f()
+        val children = ArrayList<JomlNode>()
+
+        fun update() {
+            localMatrix.identity().translate(position).rotate(rotation).scale(scale)
+            if (parent != null) {
+                parent.worldModelMatrix.mul(localMatrix, worldModelMatrix)
+            } else {
+                worldModelMatrix.set(localMatrix)
+            }
+            for (i in 0 until children.size) children[i].update()
+        }
+    }
+
+    /**
+     * Packed transform. Children are stored in depth-first order.
+     */
+    private class SlotTree {
+        val slots = ArrayList<Int>()
+        val parents = ArrayList<Int>()
+    }
+
+    private fun buildJoml(parent: JomlNode?, level: Int, roots: MutableList<JomlNode>) {
+        for (i in 0 until fanouts[level]) {
+            val node = JomlNode(parent)
+            node.position.set(i.toFloat(), 0f, -1f)
+            if (parent != null) parent.children.add(node) else roots.add(node)
+            if (level + 1 < fanouts.size) buildJoml(node, level + 1, roots)
+        }
+    }
+
+    private fun buildSlots(parentSlot: Int, level: Int, tree: SlotTree, owner: Any) {
+        for (i in 0 until fanouts[level]) {
+            val slot = TransformStore.allocate(owner)
+            TransformStore.setPosition(slot, i.toFloat(), 0f, -1f)
+            tree.slots.add(slot)
+            tree.parents.add(parentSlot)
+            if (level + 1 < fanouts.size) buildSlots(slot, level + 1, tree, owner)
+        }
+    }
+
+    @Test
+    fun updateAllTransforms() {
+        Benchmark.assumeEnabled()
+
+        val roots = ArrayList<JomlNode>()
+        buildJoml(null, 0, roots)
+        val all = ArrayList<JomlNode>()
+        fun collect(node: JomlNode) {
+            all.add(node)
+            node.children.forEach(::collect)
+        }
+        roots.forEach(::collect)
+
+        var angle = 0f
+        val before = Benchmark.measure(20) {
+            angle += 0.01f
+            for (i in 0 until all.size) all[i].rotation.rotationY(angle)
+            for (i in 0 until roots.size) roots[i].update()
+        }
+
+        val owner = Any()
+        val tree = SlotTree()
+        buildSlots(-1, 0, tree, owner)
+        val slots = tree.slots.toIntArray()
+        val parents = tree.parents.toIntArray()
+        val rotation = Quaternionf()
+
+        val after = Benchmark.measure(20) {
+            angle += 0.01f
+            rotation.rotationY(angle)
+            for (i in 0 until slots.size) {
+                TransformStore.setRotation(slots[i], rotation.x, rotation.y, rotation.z, rotation.w)
+            }
+            synchronized(TransformStore) {
+                for (i in 0 until slots.size) {
+                    TransformStore.updateLocalMatrix(slots[i])
+                    TransformStore.updateWorldMatrix(slots[i], parents[i])
+                }
+            }
+        }
+
+        slots.forEach(TransformStore::release)
+
+        Benchmark.report("TransformBenchmark", "${all.size} nodes, JOML objects ${before / 1000} us/frame, " +
+                "TransformStore ${after / 1000} us/frame (x%.2f)".format(before.toDouble() / after))
+    }
+}
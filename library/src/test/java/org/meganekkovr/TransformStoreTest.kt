@@ -0,0 +1,158 @@
+package org.meganekkovr
+
+import org.joml.Matrix4f
+import org.joml.Quaternionf
+import org.joml.Vector3f
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TransformStoreTest {
+
+    private val slots = ArrayList<Int>()
+
+    @After
+    fun releaseSlots() {
+        slots.forEach(TransformStore::release)
+        slots.clear()
+    }
+
+    private fun allocate(): Int {
+        val slot = TransformStore.allocate(Any())
+        slots.add(slot)
+        return slot
+    }
+
+    private fun localMatrix(slot: Int) = Matrix4f().set(TransformStore.localMatrices, slot * TransformStore.MATRIX_STRIDE)
+
+    private fun worldMatrix(slot: Int) = Matrix4f().set(TransformStore.worldMatrices, slot * TransformStore.MATRIX_STRIDE)
+
+    private fun assertMatrixEquals(expected: Matrix4f, actual: Matrix4f) {
+        val e = FloatArray(16)
+        val a = FloatArray(16)
+        expected.get(e)
+        actual.get(a)
+        for (i in 0 until 16) {
+            assertEquals("element $i", e[i], a[i], 1e-5f)
+        }
+    }
+
+    @Test
+    fun allocatedSlotHasIdentityTransform() {
+        val slot = allocate()
+
+        assertMatrixEquals(Matrix4f(), localMatrix(slot))
+        assertMatrixEquals(Matrix4f(), worldMatrix(slot))
+    }
+
+    @Test
+    fun localMatrixIsSameAsJoml() {
+        val slot = allocate()
+        val rotation = Quaternionf().rotateXYZ(0.3f, -1.2f, 2.0f)
+        TransformStore.setPosition(slot, 1f, -2f, 3f)
+        TransformStore.setRotation(slot, rotation.x, rotation.y, rotation.z, rotation.w)
+        TransformStore.setScale(slot, 2f, 0.5f, 1.5f)
+
+        synchronized(TransformStore) {
+            TransformStore.updateLocalMatrix(slot)
+        }
+
+        val expected = Matrix4f().translate(Vector3f(1f, -2f, 3f)).rotate(rotation).scale(Vector3f(2f, 0.5f, 1.5f))
+        assertMatrixEquals(expected, localMatrix(slot))
+    }
+
+    @Test
+    fun worldMatrixIsParentTimesLocal() {
+        val parent = allocate()
+        val child = allocate()
+        val parentRotation = Quaternionf().rotateY(0.7f)
+        TransformStore.setPosition(parent, 0f, 1f, -5f)
+        TransformStore.setRotation(parent, parentRotation.x, parentRotation.y, parentRotation.z, parentRotation.w)
+        TransformStore.setScale(parent, 3f, 3f, 3f)
+        TransformStore.setPosition(child, 1f, 0f, 0f)
+
+        synchronized(TransformStore) {
+            TransformStore.updateLocalMatrix(parent)
+            TransformStore.updateLocalMatrix(child)
+            TransformStore.updateWorldMatrix(parent, -1)
+            TransformStore.updateWorldMatrix(child, parent)
+        }
+
+        assertMatrixEquals(localMatrix(parent), worldMatrix(parent))
+        assertMatrixEquals(localMatrix(parent).mul(localMatrix(child)), worldMatrix(child))
+    }
+
+    @Test
+    fun setSingleComponent() {
+        val slot = allocate()
+        TransformStore.setPosition(slot, 1f, 2f, 3f)
+        TransformStore.setPosition(slot, 1, 5f)
+        TransformStore.setScale(slot, 2, 4f)
+
+        val p = slot * TransformStore.POSITION_STRIDE
+        assertEquals(1f, TransformStore.positions[p], 0f)
+        assertEquals(5f, TransformStore.positions[p + 1], 0f)
+        assertEquals(3f, TransformStore.positions[p + 2], 0f)
+        val s = slot * TransformStore.SCALE_STRIDE
+        assertEquals(1f, TransformStore.scales[s + 1], 0f)
+        assertEquals(4f, TransformStore.scales[s + 2], 0f)
+    }
+
+    @Test
+    fun releasedSlotIsReusedWithIdentity() {
+        val slot = TransformStore.allocate(Any())
+        TransformStore.setPosition(slot, 1f, 2f, 3f)
+        TransformStore.release(slot)
+
+        val reused = allocate()
+
+        assertEquals(slot, reused)
+        assertEquals(0f, TransformStore.positions[reused * TransformStore.POSITION_STRIDE], 0f)
+    }
+
+    @Test
+    fun growKeepsValues() {
+        val slot = allocate()
+        TransformStore.setPosition(slot, 7f, 8f, 9f)
+        val positions = TransformStore.positions
+
+        // Enough to exceed current capacity
+        val count = positions.size / TransformStore.POSITION_STRIDE + 1
+        for (i in 0 until count) allocate()
+
+        val p = slot * TransformStore.POSITION_STRIDE
+        assertNotSame(positions, TransformStore.positions)
+        assertEquals(7f, TransformStore.positions[p], 0f)
+        assertEquals(8f, TransformStore.positions[p + 1], 0f)
+        assertEquals(9f, TransformStore.positions[p + 2], 0f)
+    }
+
+    @Test
+    fun storageDoesNotGrowWhileResolving() {
+        val positions = TransformStore.positions
+        val count = positions.size / TransformStore.POSITION_STRIDE + 1
+        val grown = ArrayList<Int>()
+        val thread = Thread {
+            for (i in 0 until count) grown.add(TransformStore.allocate(Any()))
+        }
+
+        TransformStore.beginResolve()
+        try {
+            thread.start()
+            thread.join(200)
+
+            assertTrue(thread.isAlive)
+            assertSame(positions, TransformStore.positions)
+        } finally {
+            TransformStore.endResolve()
+        }
+        thread.join()
+        slots.addAll(grown)
+
+        assertEquals(count, grown.size)
+        assertNotSame(positions, TransformStore.positions)
+    }
+}
@@ -0,0 +1,167 @@
+package org.meganekkovr
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class VideoFramePacerTest {
+
+    private val pacer = VideoFramePacer()
+
+    /**
+     * Latch one frame per display frame so that interval becomes known.
+     */
+    private fun latchInOrder(vararg timestamps: Long) {
+        for (timestamp in timestamps) {
+            assertTrue(pacer.shouldLatch(1, timestamp))
+            pacer.onDisplayed(1, true, timestamp, timestamp)
+        }
+    }
+
+    @Test
+    fun nothingArrivedKeepsCurrentFrame() {
+        assertFalse(pacer.shouldLatch(0, 0))
+    }
+
+    @Test
+    fun latchNewestUntilIntervalIsKnown() {
+        assertTrue(pacer.shouldLatch(1, 0))
+        pacer.onDisplayed(1, true, 50 * MS, 0)
+
+        // Far ahead of display time, but interval is unknown
+        assertTrue(pacer.shouldLatch(1, 0))
+    }
+
+    @Test
+    fun measureIntervalAndDrift() {
+        latchInOrder(0, 33 * MS)
+
+        assertEquals(33 * MS, pacer.frameIntervalNanos)
+
+        pacer.onDisplayed(1, true, 66 * MS, 64 * MS)
+        assertEquals(2 * MS, pacer.lastDriftNanos)
+    }
+
+    @Test
+    fun holdFrameAheadOfDisplayTime() {
+        latchInOrder(0, 33 * MS)
+
+        // Next frame is estimated at 66 ms
+        assertFalse(pacer.shouldLatch(1, 40 * MS))
+        assertTrue(pacer.shouldLatch(1, 55 * MS))
+    }
+
+    @Test
+    fun holdAtMostMaxHoldFrames() {
+        latchInOrder(0, 33 * MS)
+
+        for (i in 0 until pacer.maxHoldFrames) {
+            assertFalse(pacer.shouldLatch(1, 34 * MS))
+            pacer.onDisplayed(1, false, 33 * MS, 34 * MS)
+        }
+        assertTrue(pacer.shouldLatch(1, 34 * MS))
+        assertEquals(pacer.maxHoldFrames.toLong(), pacer.repeatedFrames)
+    }
+
+    @Test
+    fun replacedFramesAreSkipped() {
+        latchInOrder(0, 33 * MS)
+
+        // Two frames were replaced by newest at 132 ms
+        pacer.onDisplayed(3, true, 132 * MS, 132 * MS)
+
+        assertEquals(2, pacer.skippedFrames)
+        assertEquals(33 * MS, pacer.frameIntervalNanos)
+    }
+
+    @Test
+    fun repeatWhilePlaying() {
+        latchInOrder(0, 33 * MS)
+
+        pacer.onDisplayed(0, false, 33 * MS, 50 * MS)
+
+        assertEquals(1, pacer.repeatedFrames)
+    }
+
+    @Test
+    fun noRepeatBeforePlaying() {
+        pacer.onDisplayed(0, false, 0, 0)
+
+        assertEquals(0, pacer.repeatedFrames)
+    }
+
+    @Test
+    fun latchOfAlreadyLatchedFrameIsIgnored() {
+        latchInOrder(0, 33 * MS)
+
+        // Frame arrived while latching previous one
+        pacer.onDisplayed(1, true, 33 * MS, 50 * MS)
+
+        assertEquals(33 * MS, pacer.frameIntervalNanos)
+        assertEquals(0, pacer.skippedFrames)
+    }
+
+    @Test
+    fun backwardTimestampResetsTiming() {
+        latchInOrder(1000 * MS, 1033 * MS)
+
+        // Seek back
+        pacer.onDisplayed(1, true, 0, 1066 * MS)
+
+        assertEquals(0, pacer.frameIntervalNanos)
+        assertTrue(pacer.shouldLatch(1, 0))
+    }
+
+    @Test
+    fun otherProducerClockIsOffset() {
+        val offset = 10000 * MS
+        for (i in 0 until 3) {
+            pacer.onDisplayed(1, true, offset + i * 33 * MS, i * 33 * MS)
+        }
+
+        assertEquals(0, pacer.lastDriftNanos)
+
+        // Next frame at offset + 99 ms is due at display time 99 ms
+        assertFalse(pacer.shouldLatch(1, 70 * MS))
+        assertTrue(pacer.shouldLatch(1, 99 * MS))
+    }
+
+    /**
+     * 30 fps video on 60 Hz display. Surface keeps newest frame only.
+     */
+    @Test
+    fun paceVideoOnFasterDisplay() {
+        val displayInterval = 16666667L
+        val videoInterval = 33333333L
+
+        var nextTimestamp = 0L
+        var arrived = 0
+        var newest = 0L
+        var latched = 0L
+
+        for (display in 0 until 120) {
+            val target = display * displayInterval
+
+            // Producer releases frame shortly before its presentation time
+            while (nextTimestamp <= target + 5 * MS) {
+                newest = nextTimestamp
+                arrived++
+                nextTimestamp += videoInterval
+            }
+
+            val latch = pacer.shouldLatch(arrived, target)
+            if (latch) latched = newest
+            pacer.onDisplayed(arrived, latch, latched, target)
+            if (latch) arrived = 0
+        }
+
+        assertEquals(videoInterval.toDouble(), pacer.frameIntervalNanos.toDouble(), 1e6)
+        assertEquals(0, pacer.skippedFrames)
+        assertTrue("Average drift ${pacer.averageDriftNanos}", pacer.averageDriftNanos < 5 * MS)
+    }
+
+    companion object {
+        private const val MS = 1000000L
+    }
+}
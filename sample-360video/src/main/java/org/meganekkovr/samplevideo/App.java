@@ -20,6 +20,7 @@ public class App extends MeganekkoApp {
         // Attach SurfaceRendererComponent to render video output to entity's surface
         SurfaceRendererComponent surfaceRenderer = new SurfaceRendererComponent();
         surfaceRenderer.setContinuousUpdate(true); // This is important!
+        surfaceRenderer.setOpaque(true); // Video has no transparent pixels
 
         // Connect output from MediaPlayer to SurfaceRendererComponent
         mediaPlayer.setSurface(surfaceRenderer.getSurface());